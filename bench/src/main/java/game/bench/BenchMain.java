@@ -0,0 +1,25 @@
+package game.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Entry point of benchmarks.jar: the regular JMH command line, with the GC
+ * profiler always on so every run reports allocation rates.
+ * e.g. java -jar bench/target/benchmarks.jar MoveGen -f 1
+ */
+public class BenchMain {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, java.io.IOException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+    }
+}
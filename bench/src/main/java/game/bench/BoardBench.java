@@ -0,0 +1,83 @@
+package game.bench;
+
+import game.Board;
+import game.MoveGenerator;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BoardBench {
+
+    @Param({"opening", "middlegame", "endgame"})
+    public String position;
+
+    private Board board;
+    private int[] moves;
+    private int count;
+    private Board copy;
+    private ByteBuffer packed;
+
+    @Setup
+    public void setup() {
+        board = Positions.board(position);
+        moves = new int[MoveGenerator.MAX_MOVES];
+        count = MoveGenerator.generate(board, board.whiteToMove, moves, 0);
+        copy = new Board(board);
+        packed = ByteBuffer.allocate(Board.PACKED_BYTES);
+    }
+
+    /** one makeMove/undoMove pair per pseudo-legal move of the position */
+    @Benchmark
+    public long makeUndo() {
+        long keys = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            keys += board.key;
+            board.undoMove();
+        }
+        return keys;
+    }
+
+    /** every square, attacked by each side */
+    @Benchmark
+    public void isUnderAttack(Blackhole bh) {
+        for (int sq = 0; sq < 64; sq++) {
+            bh.consume(board.isUnderAttack(sq, true));
+            bh.consume(board.isUnderAttack(sq, false));
+        }
+    }
+
+    @Benchmark
+    public boolean isInCheck() {
+        return board.isInCheck(board.whiteToMove);
+    }
+
+    /** position copy into an existing board */
+    @Benchmark
+    public long copyFrom() {
+        copy.copyFrom(board);
+        return copy.key;
+    }
+
+    /** encode to the packed form and decode it back */
+    @Benchmark
+    public long encodeDecode() {
+        packed.clear();
+        board.encode(packed);
+        packed.flip();
+        copy.decodeFrom(packed);
+        return copy.key;
+    }
+}
@@ -0,0 +1,37 @@
+package game.bench;
+
+import game.Board;
+import game.Engine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EngineBench {
+
+    @Param({"opening", "middlegame", "endgame"})
+    public String position;
+
+    private Engine engine;
+    private Board board;
+
+    @Setup
+    public void setup() {
+        engine = new Engine();
+        board = Positions.board(position);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return engine.evaluate(board);
+    }
+}
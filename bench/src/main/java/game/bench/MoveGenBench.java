@@ -0,0 +1,45 @@
+package game.bench;
+
+import game.Board;
+import game.Move;
+import game.MoveGenerator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoveGenBench {
+
+    @Param({"opening", "middlegame", "endgame"})
+    public String position;
+
+    private Board board;
+    private final int[] buf = new int[MoveGenerator.MAX_MOVES];
+
+    @Setup
+    public void setup() {
+        board = Positions.board(position);
+    }
+
+    /** the List<Move> adapter */
+    @Benchmark
+    public List<Move> moves() {
+        return MoveGenerator.Moves(board, board.whiteToMove);
+    }
+
+    /** packed moves into a reused buffer */
+    @Benchmark
+    public int generate() {
+        return MoveGenerator.generate(board, board.whiteToMove, buf, 0);
+    }
+}
@@ -0,0 +1,47 @@
+package game.bench;
+
+import game.Board;
+import game.Engine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+// fixed-depth perft on the standard positions; divide nodes by time for NPS
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PerftBench {
+
+    @Param({"opening", "middlegame", "endgame"})
+    public String position;
+
+    @Param({"4"})
+    public int depth;
+
+    private Engine engine;
+    private Board board;
+
+    @Setup
+    public void setup() {
+        engine = new Engine();
+        board = Positions.board(position);
+    }
+
+    @Benchmark
+    public long perft() {
+        return engine.perft(board, depth);
+    }
+}
@@ -0,0 +1,27 @@
+package game.bench;
+
+import game.Board;
+
+
+// standard test positions used across the benchmarks
+final class Positions {
+    static final String OPENING = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    // "kiwipete", the usual move-generator stress position
+    static final String MIDDLEGAME = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    static final String ENDGAME = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+
+    private Positions() {}
+
+    static String fen(String name) {
+        switch (name) {
+            case "opening": return OPENING;
+            case "middlegame": return MIDDLEGAME;
+            case "endgame": return ENDGAME;
+            default: throw new IllegalArgumentException("unknown position " + name);
+        }
+    }
+
+    static Board board(String name) {
+        return Board.fromFen(fen(name));
+    }
+}
@@ -0,0 +1,175 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * One endgame bitbase: win, draw or loss for the side to move in every
+ * position of one material set, two bits per position. White is always the
+ * side with the extra pieces; Bitbases flips the board for the other case.
+ *
+ * Symmetry keeps the tables small. Without pawns the board is mirrored and
+ * flipped until the white king stands in the a8-d8-d5 triangle (10 squares
+ * instead of 64); with a pawn only the left-right mirror applies and the pawn
+ * stands on files a-d. The index is then, most significant first:
+ *
+ *   triangle(wk), bk, pieces...   or   pawn(24), wk, bk, other pieces...
+ *
+ * with the side to move in the lowest bit. A file is an 8-byte header
+ * (magic, entry count) followed by the entries, four to a byte.
+ */
+public final class Bitbase {
+    public static final int DRAW = 0, WIN = 1, LOSS = 2, ILLEGAL = 3;
+
+    static final int MAGIC = 0x43424231; // "CBB1"
+    static final int HEADER = 8;
+
+    // a8-d8-d5 triangle, our squares (0 = a8) with row <= file <= 3
+    private static final int[] TRIANGLE = new int[64];
+    private static final int[] TRIANGLE_SQ = new int[10];
+
+    static {
+        java.util.Arrays.fill(TRIANGLE, -1);
+        int n = 0;
+        for (int row = 0; row < 4; row++) {
+            for (int file = row; file < 4; file++) {
+                TRIANGLE_SQ[n] = row * 8 + file;
+                TRIANGLE[row * 8 + file] = n++;
+            }
+        }
+    }
+
+    public final String name;
+    // the extra white pieces (Piece ordinals), in index order; a pawn comes first
+    final int[] pieces;
+    final boolean pawn;
+    public final int size;
+    private ByteBuffer data;
+
+    Bitbase(String name, int... pieces) {
+        this.name = name;
+        this.pieces = pieces;
+        this.pawn = pieces[0] == Piece.WP.ordinal();
+        long n = pawn ? 24 * 64 * 64 : 10 * 64;
+        for (int i = pawn ? 1 : 0; i < pieces.length; i++) n *= 64;
+        this.size = (int) (n * 2);
+    }
+
+    /** entry i: DRAW, WIN, LOSS (for the side to move) or ILLEGAL */
+    public int get(int i) {
+        return (data.get(HEADER + (i >>> 2)) >>> ((i & 3) << 1)) & 3;
+    }
+
+    // ------------------ index ------------------
+
+    /** index of the position sq = {wk, bk, pieces...} with white the stronger side */
+    int index(int[] sq, boolean whiteToMove) {
+        int t = transform(sq);
+        int i;
+        int next;
+        if (pawn) {
+            int p = apply(sq[2], t);
+            i = ((p >>> 3) - 1) * 4 + (p & 7);
+            i = i * 64 + apply(sq[0], t);
+            i = i * 64 + apply(sq[1], t);
+            next = 3;
+        } else {
+            i = TRIANGLE[apply(sq[0], t)];
+            i = i * 64 + apply(sq[1], t);
+            next = 2;
+        }
+        for (int k = next; k < pieces.length + 2; k++) i = i * 64 + apply(sq[k], t);
+        return i * 2 + (whiteToMove ? 0 : 1);
+    }
+
+    /** index of a board holding this material, 'strong' the colour with the extra pieces */
+    int index(Board board, int strong, int[] sq) {
+        // black as the stronger side: flip the board top to bottom and swap the colours
+        int flip = strong == 0 ? 0 : 56;
+        int off = strong == 0 ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+        sq[0] = board.kingSq[strong] ^ flip;
+        sq[1] = board.kingSq[1 - strong] ^ flip;
+        for (int k = 0; k < pieces.length; k++) {
+            sq[k + 2] = Long.numberOfTrailingZeros(board.pieceBB[pieces[k] + off]) ^ flip;
+        }
+        return index(sq, board.whiteToMove == (strong == 0));
+    }
+
+    /** the squares {wk, bk, pieces...} of entry i (already in canonical form); returns true if white moves */
+    boolean decode(int i, int[] sq) {
+        boolean whiteToMove = (i & 1) == 0;
+        i >>>= 1;
+        int first = pawn ? 3 : 2;
+        for (int k = pieces.length + 1; k >= first; k--) {
+            sq[k] = i & 63;
+            i >>>= 6;
+        }
+        if (pawn) {
+            sq[1] = i & 63;
+            sq[0] = (i >>> 6) & 63;
+            i >>>= 12;
+            sq[2] = (i / 4 + 1) * 8 + i % 4;
+        } else {
+            sq[1] = i & 63;
+            sq[0] = TRIANGLE_SQ[i >>> 6];
+        }
+        return whiteToMove;
+    }
+
+    // bit 0 mirror files, bit 1 mirror rows, bit 2 swap rows and files
+    private int transform(int[] sq) {
+        if (pawn) return (sq[2] & 7) > 3 ? 1 : 0;
+        int wk = sq[0];
+        int t = 0;
+        if ((wk & 7) > 3) t |= 1;
+        if ((wk >>> 3) > 3) t |= 2;
+        wk = apply(wk, t);
+        if ((wk >>> 3) > (wk & 7)) t |= 4;
+        return t;
+    }
+
+    private static int apply(int sq, int t) {
+        if ((t & 1) != 0) sq ^= 7;
+        if ((t & 2) != 0) sq ^= 56;
+        if ((t & 4) != 0) sq = ((sq & 7) << 3) | (sq >>> 3);
+        return sq;
+    }
+
+    // ------------------ storage ------------------
+
+    /** pack one value per entry (DRAW/WIN/LOSS/ILLEGAL) into this table's data */
+    void pack(byte[] values) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER + (size + 3) / 4).order(ByteOrder.BIG_ENDIAN);
+        b.putInt(0, MAGIC).putInt(4, size);
+        for (int i = 0; i < size; i++) {
+            int at = HEADER + (i >>> 2);
+            b.put(at, (byte) (b.get(at) | values[i] << ((i & 3) << 1)));
+        }
+        data = b;
+    }
+
+    void write(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer b = data.duplicate();
+            b.clear();
+            while (b.hasRemaining()) ch.write(b);
+        }
+    }
+
+    /** map a generated file; the mapping outlives the channel */
+    void map(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (ch.size() != HEADER + (size + 3) / 4 || b.getInt(0) != MAGIC || b.getInt(4) != size) {
+                throw new IOException(file + " is not a " + name + " bitbase");
+            }
+            data = b;
+        }
+    }
+}
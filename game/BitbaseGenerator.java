@@ -0,0 +1,223 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+
+/**
+ * Builds the endgame bitbases by retrograde analysis, offline:
+ *
+ *   java -cp chess-engine.jar game.BitbaseGenerator <dir> [kqk krk kbnk kpk]
+ *
+ * Every entry of a table is set up on a Board and its legal moves come from
+ * MoveGenerator, so the tables follow exactly the rules the engine plays by.
+ * Mates are the first losses; from each decided position the generator then
+ * walks back one move (un-moving a piece on the bitboards) and decides the
+ * predecessors: a move into a loss wins, and a position whose every move
+ * leads to a win for the opponent loses. Whatever is left undecided is a draw.
+ *
+ * Captures always leave a dead draw here; promotions are looked up in the
+ * tables generated before (KPK needs KQK and KRK, which are built first).
+ */
+public class BitbaseGenerator {
+    private static final byte UNDECIDED = -1;
+
+    private final Board board = new Board();
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private final int[] sq = new int[6];
+    private final int[] pred = new int[6];
+    // squares of the position on the board
+    private final int[] pos = new int[6];
+    private final int[] scratch = new int[6];
+    // finished tables, for positions after a promotion
+    private final Bitbases done = new Bitbases();
+
+    /** generate one table (its promotions must already be generated) and keep it for later tables */
+    public Bitbase generate(String name) {
+        Bitbase t = Bitbases.create(name);
+        byte[] val = new byte[t.size];
+        int[] queue = new int[t.size];
+        int head = 0, tail = 0;
+
+        // mates, stalemates, and wins by promoting
+        for (int i = 0; i < t.size; i++) {
+            if (!setUp(t, i)) {
+                val[i] = Bitbase.ILLEGAL;
+                continue;
+            }
+            int n = MoveGenerator.generateLegal(board, moves, 0);
+            if (n == 0) {
+                val[i] = board.isInCheck(board.whiteToMove) ? (byte) Bitbase.LOSS : Bitbase.DRAW;
+                if (val[i] == Bitbase.LOSS) queue[tail++] = i;
+                continue;
+            }
+            val[i] = UNDECIDED;
+            for (int k = 0; k < n; k++) {
+                if (Move.promo(moves[k]) == 0) continue;
+                board.makeMove(moves[k]);
+                int v = exit();
+                board.undoMove();
+                if (v == Bitbase.LOSS) {
+                    val[i] = Bitbase.WIN;
+                    queue[tail++] = i;
+                    break;
+                }
+            }
+        }
+
+        // walk back from every decided position
+        while (head < tail) {
+            int i = queue[head++];
+            boolean whiteToMove = t.decode(i, sq);
+            int v = val[i];
+            long occ = 0;
+            for (int k = 0; k < t.pieces.length + 2; k++) occ |= 1L << sq[k];
+            for (int k = 0; k < t.pieces.length + 2; k++) {
+                // only the side that just moved: black's king, or white's king and pieces
+                if ((k == 1) != whiteToMove) continue;
+                for (long from = unmoves(t, k, sq[k], occ); from != 0; from &= from - 1) {
+                    System.arraycopy(sq, 0, pred, 0, sq.length);
+                    pred[k] = Long.numberOfTrailingZeros(from);
+                    int q = t.index(pred, !whiteToMove);
+                    tail = decide(t, val, queue, tail, q, v);
+                    if (t.pawn) continue;
+                    // a white king on the a8-h1 diagonal does not fix the
+                    // orientation, so the mirror image has an entry of its own
+                    for (int j = 0; j < t.pieces.length + 2; j++) pred[j] = ((pred[j] & 7) << 3) | (pred[j] >>> 3);
+                    int mirrored = t.index(pred, !whiteToMove);
+                    if (mirrored != q) tail = decide(t, val, queue, tail, mirrored, v);
+                }
+            }
+        }
+
+        for (int i = 0; i < t.size; i++) if (val[i] == UNDECIDED) val[i] = Bitbase.DRAW;
+        t.pack(val);
+        for (int i = 0; i < Bitbases.NAMES.length; i++) {
+            if (Bitbases.NAMES[i].equals(name)) done.tables[i] = t;
+        }
+        return t;
+    }
+
+    // predecessor q of a position worth v to its side to move; returns the new queue tail
+    private int decide(Bitbase t, byte[] val, int[] queue, int tail, int q, int v) {
+        if (val[q] != UNDECIDED) return tail;
+        if (v == Bitbase.LOSS) {
+            val[q] = Bitbase.WIN;
+            queue[tail++] = q;
+        } else if (v == Bitbase.WIN && allLose(t, val, q)) {
+            val[q] = Bitbase.LOSS;
+            queue[tail++] = q;
+        }
+        return tail;
+    }
+
+    // squares the piece sq[k] can have come from without capturing
+    private static long unmoves(Bitbase t, int k, int s, long occ) {
+        if (k < 2) return Bitboards.KING[s] & ~occ;
+        int piece = t.pieces[k - 2];
+        long from;
+        if (piece == Piece.WP.ordinal()) {
+            // white pawns move up the board (towards square 0)
+            from = 0;
+            int row = s >>> 3;
+            if (row <= 5 && (occ & (1L << (s + 8))) == 0) {
+                from |= 1L << (s + 8);
+                if (row == 4 && (occ & (1L << (s + 16))) == 0) from |= 1L << (s + 16);
+            }
+            return from;
+        }
+        if (piece == Piece.WN.ordinal()) from = Bitboards.KNIGHT[s];
+        else if (piece == Piece.WB.ordinal()) from = Bitboards.bishopAttacks(s, occ);
+        else if (piece == Piece.WR.ordinal()) from = Bitboards.rookAttacks(s, occ);
+        else from = Bitboards.queenAttacks(s, occ);
+        return from & ~occ;
+    }
+
+    // does every move of entry q lead to a position the opponent wins?
+    private boolean allLose(Bitbase t, byte[] val, int q) {
+        setUp(t, q);
+        int n = MoveGenerator.generateLegal(board, moves, 0);
+        for (int k = 0; k < n; k++) {
+            int m = moves[k];
+            board.makeMove(m);
+            int v = Move.captured(m) != Piece.EMPTY.ordinal() || Move.promo(m) != 0
+                    ? exit() : val[t.index(board, 0, scratch)];
+            board.undoMove();
+            if (v != Bitbase.WIN) return false;
+        }
+        return true;
+    }
+
+    // value of a position that left the table, for its side to move
+    private int exit() {
+        int v = done.probe(board, scratch);
+        // bare kings, or a lone minor piece after an under-promotion
+        return v == Bitbases.UNKNOWN ? Bitbase.DRAW : v;
+    }
+
+    // put entry i on the board; false if it is not a legal position
+    private boolean setUp(Bitbase t, int i) {
+        boolean whiteToMove = t.decode(i, pos);
+        int count = t.pieces.length + 2;
+        long occ = 0;
+        for (int k = 0; k < count; k++) {
+            if ((occ & (1L << pos[k])) != 0) return false;
+            occ |= 1L << pos[k];
+        }
+        if ((Bitboards.KING[pos[0]] & (1L << pos[1])) != 0) return false;
+        for (int k = 2; k < count; k++) {
+            int row = pos[k] >>> 3;
+            if (t.pieces[k - 2] == Piece.WP.ordinal() && (row == 0 || row == 7)) return false;
+        }
+
+        Arrays.fill(board.squares, Piece.EMPTY.ordinal());
+        board.squares[pos[0]] = Piece.WK.ordinal();
+        board.squares[pos[1]] = Piece.BK.ordinal();
+        for (int k = 2; k < count; k++) board.squares[pos[k]] = t.pieces[k - 2];
+        board.whiteToMove = whiteToMove;
+        board.enPassantSquare = -1;
+        board.castlingRight = 0;
+        board.halfMoveClock = 0;
+        board.refresh();
+        // the side that is not to move cannot be in check
+        return !board.isInCheck(!whiteToMove);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: BitbaseGenerator <dir> [kqk krk kbnk kpk]");
+            System.exit(2);
+        }
+        Path dir = Paths.get(args[0]);
+        Files.createDirectories(dir);
+        Set<String> wanted = new LinkedHashSet<>();
+        for (int i = 1; i < args.length; i++) wanted.add(args[i].toLowerCase());
+        if (wanted.isEmpty()) wanted.addAll(Arrays.asList(Bitbases.NAMES));
+        // KPK promotes into KQK and KRK
+        if (wanted.contains("kpk")) {
+            wanted.add("kqk");
+            wanted.add("krk");
+        }
+
+        BitbaseGenerator g = new BitbaseGenerator();
+        for (String name : Bitbases.NAMES) {
+            if (!wanted.remove(name)) continue;
+            long t0 = System.nanoTime();
+            Bitbase t = g.generate(name);
+            Path file = dir.resolve(name + ".bb");
+            t.write(file);
+            int[] counts = new int[4];
+            for (int i = 0; i < t.size; i++) counts[t.get(i)]++;
+            System.out.println(name + ": " + t.size + " entries, " + counts[Bitbase.WIN] + " won, "
+                    + counts[Bitbase.DRAW] + " drawn, " + counts[Bitbase.LOSS] + " lost, "
+                    + counts[Bitbase.ILLEGAL] + " illegal, " + Files.size(file) + " bytes, "
+                    + (System.nanoTime() - t0) / 1_000_000 + "ms");
+        }
+        for (String name : wanted) System.err.println("no bitbase " + name);
+    }
+}
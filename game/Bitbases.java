@@ -0,0 +1,132 @@
+package game;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * The endgame bitbases the engine knows (KQK, KRK, KPK, KBNK), memory-mapped
+ * from a directory of files written by BitbaseGenerator. probe() answers in
+ * O(1) for any board with that material, whichever side has it; tables that
+ * are missing from the directory are simply not used.
+ */
+public final class Bitbases {
+    public static final int UNKNOWN = -1, DRAW = Bitbase.DRAW, WIN = Bitbase.WIN, LOSS = Bitbase.LOSS;
+    // won endgames score above any evaluation and below any mate
+    public static final int KNOWN_WIN = 10000;
+
+    public static final String[] NAMES = {"kqk", "krk", "kbnk", "kpk"};
+
+    // table per NAMES entry, null when not available
+    final Bitbase[] tables = new Bitbase[NAMES.length];
+
+    Bitbases() {}
+
+    /** map every table found in dir (files kqk.bb, krk.bb, ...) */
+    public static Bitbases open(Path dir) throws IOException {
+        Bitbases b = new Bitbases();
+        for (int i = 0; i < NAMES.length; i++) {
+            Path file = dir.resolve(NAMES[i] + ".bb");
+            if (!Files.exists(file)) continue;
+            Bitbase t = create(NAMES[i]);
+            t.map(file);
+            b.tables[i] = t;
+        }
+        return b;
+    }
+
+    /** an empty table of the named material (see NAMES) */
+    static Bitbase create(String name) {
+        switch (name) {
+            case "kqk": return new Bitbase(name, Piece.WQ.ordinal());
+            case "krk": return new Bitbase(name, Piece.WR.ordinal());
+            case "kbnk": return new Bitbase(name, Piece.WB.ordinal(), Piece.WN.ordinal());
+            case "kpk": return new Bitbase(name, Piece.WP.ordinal());
+            default: throw new IllegalArgumentException("no bitbase " + name);
+        }
+    }
+
+    /** number of tables in use */
+    public int count() {
+        int n = 0;
+        for (Bitbase t : tables) if (t != null) n++;
+        return n;
+    }
+
+    /** DRAW, WIN or LOSS for the side to move, UNKNOWN when no table covers the board */
+    public int probe(Board board) {
+        return probe(board, new int[6]);
+    }
+
+    /** same, with a caller-owned scratch array of 6 squares so nothing is allocated */
+    public int probe(Board board, int[] squares) {
+        int n = Long.bitCount(board.occupied);
+        if (n < 3 || n > 4 || board.castlingRight != 0) return UNKNOWN;
+        long white = board.colorBB[0] & ~board.pieceBB[Piece.WK.ordinal()];
+        long black = board.colorBB[1] & ~board.pieceBB[Piece.BK.ordinal()];
+        int strong;
+        if (black == 0) strong = 0;
+        else if (white == 0) strong = 1;
+        else return UNKNOWN;
+
+        Bitbase t = table(board, strong, n - 2);
+        if (t == null) return UNKNOWN;
+        return t.get(t.index(board, strong, squares));
+    }
+
+    private Bitbase table(Board board, int strong, int extra) {
+        int off = strong == 0 ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+        search:
+        for (Bitbase t : tables) {
+            if (t == null || t.pieces.length != extra) continue;
+            for (int p : t.pieces) {
+                if (board.pieceCount[p + off] != 1) continue search;
+            }
+            return t;
+        }
+        return null;
+    }
+
+    /**
+     * Score for the side to move of a probed position: 0 for a draw, otherwise
+     * KNOWN_WIN plus a small term that leads the search towards the mate (or
+     * the promotion), since the tables only say who wins, not how fast.
+     */
+    public static int score(Board board, int wdl) {
+        if (wdl == DRAW) return 0;
+        int strong = Long.bitCount(board.colorBB[0]) > 1 ? 0 : 1;
+        int s = KNOWN_WIN + progress(board, strong);
+        return wdl == WIN ? s : -s;
+    }
+
+    // from the winner's side: weak king to the edge (the right corner with
+    // bishop and knight), kings close together, pawn far advanced
+    private static int progress(Board board, int strong) {
+        int wk = board.kingSq[strong];
+        int bk = board.kingSq[1 - strong];
+        int s = 5 * (7 - distance(wk, bk));
+
+        int off = strong == 0 ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+        long pawns = board.pieceBB[Piece.WP.ordinal() + off];
+        if (pawns != 0) {
+            int row = Long.numberOfTrailingZeros(pawns) >>> 3;
+            return s + 20 * (strong == 0 ? 7 - row : row);
+        }
+        long bishops = board.pieceBB[Piece.WB.ordinal() + off];
+        if (bishops != 0 && board.pieceBB[Piece.WN.ordinal() + off] != 0) {
+            int b = Long.numberOfTrailingZeros(bishops);
+            // a8 and h1 are light, a1 and h8 dark
+            boolean light = ((b >>> 3) + (b & 7)) % 2 == 0;
+            int corner = light ? Math.min(distance(bk, 0), distance(bk, 63)) : Math.min(distance(bk, 56), distance(bk, 7));
+            return s + 20 * (7 - corner);
+        }
+        int file = bk & 7, row = bk >>> 3;
+        int centre = Math.max(Math.max(3 - file, file - 4), Math.max(3 - row, row - 4));
+        return s + 20 * centre;
+    }
+
+    private static int distance(int a, int b) {
+        return Math.max(Math.abs((a & 7) - (b & 7)), Math.abs((a >>> 3) - (b >>> 3)));
+    }
+}
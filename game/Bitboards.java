@@ -0,0 +1,183 @@
+package game;
+
+
+// Precomputed attack tables. A bitboard is a long where bit i is square i
+// (same indexing as Board.squares: 0 = a8 ... 63 = h1).
+public final class Bitboards {
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    // row 0 is rank 8, row 7 is rank 1
+    public static final long RANK_8 = 0xFFL;
+    public static final long RANK_1 = 0xFFL << 56;
+
+    public static final long[] KNIGHT = new long[64];
+    public static final long[] KING = new long[64];
+    // PAWN[0][sq] = squares a white pawn on sq attacks, PAWN[1][sq] = same for black
+    public static final long[][] PAWN = new long[2][64];
+
+    // BETWEEN[a][b] = squares strictly between a and b when they share a rank, file or
+    // diagonal (0 otherwise); LINE[a][b] = the whole line through both, a and b included
+    public static final long[][] BETWEEN = new long[64][64];
+    public static final long[][] LINE = new long[64][64];
+
+    // magic lookup for sliders
+    private static final long[] ROOK_MASK = new long[64];
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final long[] ROOK_MAGIC = new long[64];
+    private static final long[] BISHOP_MAGIC = new long[64];
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] ROOK_TABLE;
+    private static final long[] BISHOP_TABLE;
+
+    private static final int[][] ROOK_DIRS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+    private static final int[][] BISHOP_DIRS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+
+    private Bitboards() {}
+
+    static {
+        int[][] knightSteps = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+        int[][] kingSteps = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+        for (int sq = 0; sq < 64; sq++) {
+            KNIGHT[sq] = steps(sq, knightSteps);
+            KING[sq] = steps(sq, kingSteps);
+            // white pawns move towards row 0, black towards row 7
+            PAWN[0][sq] = steps(sq, new int[][]{{-1, -1}, {-1, 1}});
+            PAWN[1][sq] = steps(sq, new int[][]{{1, -1}, {1, 1}});
+        }
+
+        int rookSize = 0, bishopSize = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_MASK[sq] = relevantMask(sq, ROOK_DIRS);
+            BISHOP_MASK[sq] = relevantMask(sq, BISHOP_DIRS);
+            ROOK_SHIFT[sq] = 64 - Long.bitCount(ROOK_MASK[sq]);
+            BISHOP_SHIFT[sq] = 64 - Long.bitCount(BISHOP_MASK[sq]);
+            ROOK_OFFSET[sq] = rookSize;
+            BISHOP_OFFSET[sq] = bishopSize;
+            rookSize += 1 << Long.bitCount(ROOK_MASK[sq]);
+            bishopSize += 1 << Long.bitCount(BISHOP_MASK[sq]);
+        }
+        ROOK_TABLE = new long[rookSize];
+        BISHOP_TABLE = new long[bishopSize];
+
+        // fixed seed so every run builds the same tables
+        long[] seed = {0x5EEDC0DEL};
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_MAGIC[sq] = findMagic(sq, ROOK_MASK[sq], ROOK_SHIFT[sq], ROOK_DIRS, ROOK_TABLE, ROOK_OFFSET[sq], seed);
+            BISHOP_MAGIC[sq] = findMagic(sq, BISHOP_MASK[sq], BISHOP_SHIFT[sq], BISHOP_DIRS, BISHOP_TABLE, BISHOP_OFFSET[sq], seed);
+        }
+
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                if (a == b) continue;
+                long ab = (1L << a) | (1L << b);
+                for (int[][] dirs : new int[][][]{ROOK_DIRS, BISHOP_DIRS}) {
+                    if ((slowAttacks(a, 0L, dirs) & (1L << b)) == 0) continue;
+                    BETWEEN[a][b] = slowAttacks(a, 1L << b, dirs) & slowAttacks(b, 1L << a, dirs);
+                    LINE[a][b] = (slowAttacks(a, 0L, dirs) & slowAttacks(b, 0L, dirs)) | ab;
+                }
+            }
+        }
+    }
+
+    public static long rookAttacks(int sq, long occupied) {
+        int idx = (int) (((occupied & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq]);
+        return ROOK_TABLE[ROOK_OFFSET[sq] + idx];
+    }
+
+    public static long bishopAttacks(int sq, long occupied) {
+        int idx = (int) (((occupied & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq]);
+        return BISHOP_TABLE[BISHOP_OFFSET[sq] + idx];
+    }
+
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    // ------------------ table setup ------------------
+
+    private static long steps(int sq, int[][] deltas) {
+        int row = sq / 8, col = sq % 8;
+        long bb = 0L;
+        for (int[] d : deltas) {
+            int r = row + d[0], c = col + d[1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) bb |= 1L << (r * 8 + c);
+        }
+        return bb;
+    }
+
+    /** ray attacks computed the slow way, only used to fill the magic tables */
+    private static long slowAttacks(int sq, long occupied, int[][] dirs) {
+        long bb = 0L;
+        for (int[] d : dirs) {
+            int r = sq / 8 + d[0], c = sq % 8 + d[1];
+            while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                long bit = 1L << (r * 8 + c);
+                bb |= bit;
+                if ((occupied & bit) != 0) break;
+                r += d[0];
+                c += d[1];
+            }
+        }
+        return bb;
+    }
+
+    /** squares whose occupancy matters for a slider on sq (board edges excluded) */
+    private static long relevantMask(int sq, int[][] dirs) {
+        long bb = 0L;
+        for (int[] d : dirs) {
+            int r = sq / 8 + d[0], c = sq % 8 + d[1];
+            while (r + d[0] >= 0 && r + d[0] < 8 && c + d[1] >= 0 && c + d[1] < 8) {
+                bb |= 1L << (r * 8 + c);
+                r += d[0];
+                c += d[1];
+            }
+        }
+        return bb;
+    }
+
+    // xorshift64*, much cheaper than java.util.Random for the millions of candidates tried
+    private static long random(long[] seed) {
+        long x = seed[0];
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        seed[0] = x;
+        return x * 2685821657736338717L;
+    }
+
+    private static long findMagic(int sq, long mask, int shift, int[][] dirs, long[] table, int offset, long[] seed) {
+        int n = 1 << Long.bitCount(mask);
+        long[] occ = new long[n];
+        long[] att = new long[n];
+        // enumerate every subset of the mask (carry-rippler)
+        long subset = 0L;
+        for (int i = 0; i < n; i++) {
+            occ[i] = subset;
+            att[i] = slowAttacks(sq, subset, dirs);
+            subset = (subset - mask) & mask;
+        }
+
+        int[] usedAt = new int[n];
+        for (int attempt = 1; ; attempt++) {
+            // sparse random numbers make good magic candidates
+            long magic = random(seed) & random(seed) & random(seed);
+            if (Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6) continue;
+
+            boolean ok = true;
+            for (int i = 0; i < n && ok; i++) {
+                int idx = (int) ((occ[i] * magic) >>> shift);
+                if (usedAt[idx] != attempt) {
+                    usedAt[idx] = attempt;
+                    table[offset + idx] = att[i];
+                } else if (table[offset + idx] != att[i]) {
+                    ok = false;
+                }
+            }
+            if (ok) return magic;
+        }
+    }
+}
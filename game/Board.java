@@ -1,8 +1,7 @@
 package game;
 
-
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class Board {
 
@@ -20,8 +19,44 @@ public class Board {
     // fullmove number (starts at 1, increments after Black)
     public int fullMoveNum = 1;
 
-    // history stack for undo
-    private Deque<BoardState> history = new ArrayDeque<>();
+    // bitboards kept in sync with squares[]: one per Piece ordinal,
+    // one per colour (0 white, 1 black) and all occupied squares
+    public long[] pieceBB = new long[13];
+    public long[] colorBB = new long[2];
+    public long occupied = 0L;
+
+    // king square per colour (0 white, 1 black), -1 if that king is missing
+    public int[] kingSq = {-1, -1};
+    // number of pieces on the board per Piece ordinal
+    public int[] pieceCount = new int[13];
+
+    // running evaluation totals (see Evaluation): material + piece-square,
+    // white minus black, for middlegame and endgame, plus the game phase
+    public int mgScore = 0;
+    public int egScore = 0;
+    public int phase = 0;
+
+    // zobrist key of the position (pieces, side, castling, en-passant file)
+    public long key = 0L;
+    // zobrist key of the pawns alone, for the pawn-structure cache (see PawnTable)
+    public long pawnKey = 0L;
+    // -Dchess.debugHash=true re-checks the key from scratch after every make/undo
+    public static final boolean DEBUG_HASH = Boolean.getBoolean("chess.debugHash");
+
+    // undo history, one flat record per played move: UNDO_STRIDE ints in undo[]
+    // plus the keys in undoKey[] and undoPawnKey[]; grown (doubled) only when a game gets that long.
+    // search copies start small, a search line rarely goes past UNDO_INITIAL plies
+    private static final int UNDO_INITIAL = 64;
+    private static final int U_MOVE = 0, U_CAPTURED = 1, U_EP = 2, U_CASTLING = 3,
+            U_HALFMOVE = 4, U_FULLMOVE = 5, U_MG = 6, U_EG = 7, U_PHASE = 8;
+    private static final int UNDO_STRIDE = 9;
+    private int[] undo = new int[UNDO_INITIAL * UNDO_STRIDE];
+    private long[] undoKey = new long[UNDO_INITIAL];
+    private long[] undoPawnKey = new long[UNDO_INITIAL];
+    private int undoCount = 0;
+    // records below this one were inherited by copyFrom: their keys count for
+    // repetitions, but they cannot be undone
+    private int undoBase = 0;
 
     // store pieces in 0-63 squares
     public Board() {
@@ -62,175 +97,570 @@ public class Board {
         halfMoveClock = 0;
         // setting full move number to 1
         fullMoveNum = 1;
+
+        refresh();
+    }
+
+    /** copy of the position (see copyFrom): no moves to undo, but the repetition history is kept */
+    public Board(Board other) {
+        copyFrom(other);
     }
 
+    /**
+     * Make this board a copy of other's position, reusing this board's arrays.
+     * Moves played before the copy cannot be undone on it, but the keys of
+     * the positions since the last irreversible move come along, so a search
+     * on the copy still sees repetitions of the game (see isSearchRepetition).
+     */
+    public void copyFrom(Board other) {
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        whiteToMove = other.whiteToMove;
+        enPassantSquare = other.enPassantSquare;
+        castlingRight = other.castlingRight;
+        halfMoveClock = other.halfMoveClock;
+        fullMoveNum = other.fullMoveNum;
+        System.arraycopy(other.pieceBB, 0, pieceBB, 0, pieceBB.length);
+        colorBB[0] = other.colorBB[0];
+        colorBB[1] = other.colorBB[1];
+        occupied = other.occupied;
+        key = other.key;
+        pawnKey = other.pawnKey;
+        kingSq[0] = other.kingSq[0];
+        kingSq[1] = other.kingSq[1];
+        System.arraycopy(other.pieceCount, 0, pieceCount, 0, pieceCount.length);
+        mgScore = other.mgScore;
+        egScore = other.egScore;
+        phase = other.phase;
+
+        int n = Math.min(other.undoCount, other.halfMoveClock);
+        if (n > undoKey.length) {
+            undoKey = new long[n];
+            undoPawnKey = new long[n];
+            undo = new int[n * UNDO_STRIDE];
+        }
+        System.arraycopy(other.undoKey, other.undoCount - n, undoKey, 0, n);
+        undoCount = undoBase = n;
+    }
 
-    // data to store for undoing a move
-    public static class BoardState {
-        int from;
-        int to;
-        int movedPiece;
-        int capPiece;
-        int promotion;
-        int preEnPassant;        
-        int prevCastlingRight;
-        int prevHalfMove;
-        int prevFullMove;
-        boolean prevWhiteToMove;
-        Flag flag;
+    /**
+     * Has the position occurred 'times' times before? Only positions since the
+     * last capture or pawn move (halfMoveClock plies) with the same side to
+     * move are looked at. Two is the game's rule (threefold repetition).
+     */
+    public boolean isRepetition(int times) {
+        int stop = Math.max(0, undoCount - halfMoveClock);
+        int seen = 0;
+        // a position cannot come back in fewer than 4 plies
+        for (int i = undoCount - 4; i >= stop; i -= 2) {
+            if (undoKey[i] == key && ++seen >= times) return true;
+        }
+        return false;
     }
 
+    /**
+     * The repetition draw for a search 'ply' plies below its root: a position
+     * that already occurred after the root is a draw at once (the side that
+     * repeats could always repeat again), one from the game up to the root
+     * only when it comes back for the third time.
+     */
+    public boolean isSearchRepetition(int ply) {
+        int stop = Math.max(0, undoCount - halfMoveClock);
+        // undoKey[root] is the root position
+        int root = undoCount - ply;
+        int seen = 0;
+        for (int i = undoCount - 4; i >= stop; i -= 2) {
+            if (undoKey[i] == key && (i > root || ++seen >= 2)) return true;
+        }
+        return false;
+    }
 
+    private static final int FLAG_EN_PASSANT = Flag.EN_PASSANT.ordinal();
+    private static final int FLAG_DPP = Flag.DPP.ordinal();
+    private static final int FLAG_KC = Flag.KC.ordinal();
+    private static final int FLAG_QC = Flag.QC.ordinal();
+
+    private static final String FEN_PIECES = " PNBRQKpnbrqk";
+
+    /** position from a FEN string; the move counters are optional */
+    public static Board fromFen(String fen) {
+        String[] f = fen.trim().split("\\s+");
+        if (f.length < 4) throw new IllegalArgumentException("FEN needs at least 4 fields: " + fen);
+        Board b = new Board();
+        Arrays.fill(b.squares, Piece.EMPTY.ordinal());
+
+        // eight ranks of exactly eight squares each
+        String[] ranks = f[0].split("/", -1);
+        if (ranks.length != 8) throw new IllegalArgumentException("bad FEN board, " + ranks.length + " ranks: " + f[0]);
+        for (int row = 0; row < 8; row++) {
+            int col = 0;
+            for (char c : ranks[row].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    col += c - '0';
+                } else {
+                    int p = FEN_PIECES.indexOf(c);
+                    if (p <= 0) throw new IllegalArgumentException("bad FEN piece '" + c + "': " + f[0]);
+                    if (col < 8) b.squares[row * 8 + col] = p;
+                    col++;
+                }
+            }
+            if (col != 8) throw new IllegalArgumentException("bad FEN board, rank " + (8 - row) + " has " + col + " squares: " + f[0]);
+        }
+
+        if (!f[1].equals("w") && !f[1].equals("b")) throw new IllegalArgumentException("bad FEN side: " + f[1]);
+        b.whiteToMove = f[1].equals("w");
+        b.castlingRight = 0;
+        if (f[2].indexOf('K') >= 0) b.castlingRight |= 1;
+        if (f[2].indexOf('Q') >= 0) b.castlingRight |= 2;
+        if (f[2].indexOf('k') >= 0) b.castlingRight |= 4;
+        if (f[2].indexOf('q') >= 0) b.castlingRight |= 8;
+        if (f[3].equals("-")) {
+            b.enPassantSquare = -1;
+        } else {
+            // behind a pawn the other side just moved two squares: rank 6 with white to move, rank 3 with black
+            int ep = b.squareFromString(f[3]);
+            if (ep == -1 || ep / 8 != (b.whiteToMove ? 2 : 5)) throw new IllegalArgumentException("bad FEN en-passant square: " + f[3]);
+            b.enPassantSquare = ep;
+        }
+        try {
+            b.halfMoveClock = f.length > 4 ? Integer.parseInt(f[4]) : 0;
+            b.fullMoveNum = f.length > 5 ? Integer.parseInt(f[5]) : 1;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad FEN counters: " + fen, e);
+        }
+        b.refresh();
+        return b;
+    }
+
+    /** the position as a FEN string, with both move counters */
+    public String toFen() {
+        StringBuilder sb = new StringBuilder();
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int p = squares[row * 8 + col];
+                if (p == Piece.EMPTY.ordinal()) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) sb.append(empty);
+                empty = 0;
+                sb.append(FEN_PIECES.charAt(p));
+            }
+            if (empty > 0) sb.append(empty);
+            if (row < 7) sb.append('/');
+        }
+        sb.append(whiteToMove ? " w " : " b ");
+        if (castlingRight == 0) sb.append('-');
+        if ((castlingRight & 1) != 0) sb.append('K');
+        if ((castlingRight & 2) != 0) sb.append('Q');
+        if ((castlingRight & 4) != 0) sb.append('k');
+        if ((castlingRight & 8) != 0) sb.append('q');
+        sb.append(' ').append(enPassantSquare == -1 ? "-" : indexToSquare(enPassantSquare));
+        sb.append(' ').append(halfMoveClock).append(' ').append(fullMoveNum);
+        return sb.toString();
+    }
+
+
+    // ------------------ packed binary form ------------------
+
+    /** size of encode()'s output */
+    public static final int PACKED_BYTES = 32;
+
+    /**
+     * Write the position in PACKED_BYTES bytes at out's position, independent
+     * of the buffer's byte order:
+     *
+     *   0-7    occupied squares, a bitboard (big-endian)
+     *   8-23   the piece on each occupied square in square order, a Piece
+     *          ordinal per 4 bits, high nibble first (32 pieces at most)
+     *   24     bit 0 black to move, bits 1-4 castling rights
+     *   25     en-passant file + 1, 0 for none
+     *   26-27  halfmove clock (capped at 65535)
+     *   28-31  fullmove number
+     */
+    public void encode(ByteBuffer out) {
+        if (Long.bitCount(occupied) > 32) throw new IllegalStateException("more than 32 pieces");
+        putBytes(out, occupied, 8);
+        int nibbles = 0;
+        long acc = 0;
+        for (long bb = occupied; bb != 0; bb &= bb - 1) {
+            acc = (acc << 4) | squares[Long.numberOfTrailingZeros(bb)];
+            // flush every 16 pieces
+            if (++nibbles == 16) {
+                putBytes(out, acc, 8);
+                acc = 0;
+            }
+        }
+        if (nibbles < 16) {
+            putBytes(out, acc << (4 * (16 - nibbles)), 8);
+            putBytes(out, 0, 8);
+        } else {
+            putBytes(out, acc << (4 * (32 - nibbles)), 8);
+        }
+        out.put((byte) ((whiteToMove ? 0 : 1) | castlingRight << 1));
+        out.put((byte) (enPassantSquare == -1 ? 0 : enPassantSquare % 8 + 1));
+        putBytes(out, Math.min(halfMoveClock, 0xFFFF), 2);
+        putBytes(out, fullMoveNum, 4);
+    }
+
+    /** read a position written by encode() */
+    public static Board decode(ByteBuffer in) {
+        Board b = new Board();
+        b.decodeFrom(in);
+        return b;
+    }
+
+    /**
+     * Same, into this board (nothing is allocated); clears the undo history.
+     * Throws IllegalArgumentException on bytes encode() cannot have written.
+     */
+    public void decodeFrom(ByteBuffer in) {
+        long occ = getBytes(in, 8);
+        long hi = getBytes(in, 8), lo = getBytes(in, 8);
+        int side = in.get() & 0xFF;
+        int ep = in.get() & 0xFF;
+        int half = (int) getBytes(in, 2);
+        int full = (int) getBytes(in, 4);
+        if (Long.bitCount(occ) > 32 || side > 31 || ep > 8) throw new IllegalArgumentException("not a packed position");
+
+        Arrays.fill(squares, Piece.EMPTY.ordinal());
+        int n = 0;
+        for (long bb = occ; bb != 0; bb &= bb - 1, n++) {
+            long word = n < 16 ? hi : lo;
+            int p = (int) (word >>> (4 * (15 - n % 16))) & 15;
+            if (p == Piece.EMPTY.ordinal() || p > Piece.BK.ordinal()) {
+                throw new IllegalArgumentException("not a packed position: piece " + p);
+            }
+            squares[Long.numberOfTrailingZeros(bb)] = p;
+        }
+        whiteToMove = (side & 1) == 0;
+        castlingRight = side >>> 1;
+        // the en-passant square is behind the pawn that just moved two squares
+        enPassantSquare = ep == 0 ? -1 : (whiteToMove ? 16 : 40) + ep - 1;
+        halfMoveClock = half;
+        fullMoveNum = full;
+        undoCount = undoBase = 0;
+        refresh();
+    }
+
+    private static void putBytes(ByteBuffer out, long v, int n) {
+        for (int i = n - 1; i >= 0; i--) out.put((byte) (v >>> (8 * i)));
+    }
+
+    private static long getBytes(ByteBuffer in, int n) {
+        long v = 0;
+        for (int i = 0; i < n; i++) v = (v << 8) | (in.get() & 0xFF);
+        return v;
+    }
 
     public void makeMove(Move m) {
-        BoardState st = new BoardState();
-        st.from = m.from;
-        st.to = m.to;
-        st.movedPiece = squares[m.from];
-        st.capPiece = squares[m.to];
-        st.promotion = m.promoPiece;
-        st.preEnPassant = this.enPassantSquare;
-        st.prevCastlingRight = this.castlingRight;
-        st.prevHalfMove = this.halfMoveClock;
-        st.prevFullMove = this.fullMoveNum;
-        st.prevWhiteToMove = this.whiteToMove;
-        st.flag = m.flag;
-
-        history.push(st);
+        makeMove(m.pack());
+    }
+
+    /** play a packed move (see Move.pack) */
+    public void makeMove(int m) {
+        int from = Move.from(m);
+        int to = Move.to(m);
+        int promo = Move.promo(m);
+        int flag = Move.flag(m);
+        int moved = squares[from];
+        int captured = squares[to];
+        boolean white = whiteToMove;
+
+        if (undoCount == undoKey.length) {
+            undoKey = Arrays.copyOf(undoKey, undoCount * 2);
+            undoPawnKey = Arrays.copyOf(undoPawnKey, undoCount * 2);
+            undo = Arrays.copyOf(undo, undoCount * 2 * UNDO_STRIDE);
+        }
+        int u = undoCount * UNDO_STRIDE;
+        undo[u + U_MOVE] = m;
+        undo[u + U_EP] = enPassantSquare;
+        undo[u + U_CASTLING] = castlingRight;
+        undo[u + U_HALFMOVE] = halfMoveClock;
+        undo[u + U_FULLMOVE] = fullMoveNum;
+        undo[u + U_MG] = mgScore;
+        undo[u + U_EG] = egScore;
+        undo[u + U_PHASE] = phase;
+        undoKey[undoCount] = key;
+        undoPawnKey[undoCount] = pawnKey;
+        undoCount++;
+        int prevEnPassant = enPassantSquare;
+        int prevCastling = castlingRight;
 
         // move
-        squares[m.to] = squares[m.from];
-        squares[m.from] = Piece.EMPTY.ordinal();
+        if (captured != Piece.EMPTY.ordinal()) removePiece(to);
+        movePiece(from, to);
 
         // en-passant capture (remove the captured pawn behind the target)
-        if (m.flag == Flag.EN_PASSANT) {
-            int capSq = st.prevWhiteToMove ? m.to + 8 : m.to - 8;
-            st.capPiece = squares[capSq];
-            squares[capSq] = Piece.EMPTY.ordinal();
+        if (flag == FLAG_EN_PASSANT) {
+            int capSq = white ? to + 8 : to - 8;
+            captured = squares[capSq];
+            removePiece(capSq);
         }
+        undo[u + U_CAPTURED] = captured;
 
         // promotion
-        if (m.promoPiece != -1) {
-            squares[m.to] = m.promoPiece;
+        if (promo != 0) {
+            removePiece(to);
+            putPiece(to, promo);
         }
 
         // double pawn push -> set enPassantSquare (the square behind pawn)
-        if (m.flag == Flag.DPP) {
-            this.enPassantSquare = (m.from + m.to) / 2;
+        if (flag == FLAG_DPP) {
+            this.enPassantSquare = (from + to) / 2;
         } else {
             this.enPassantSquare = -1;
         }
 
         // castling rook moves
-        if (m.flag == Flag.KC) {
+        if (flag == FLAG_KC) {
             // kingside: move rook next to king
-            if (m.to == 62) { // white O-O
-                squares[61] = squares[63];
-                squares[63] = Piece.EMPTY.ordinal();
-            } else if (m.to == 6) { // black O-O
-                squares[5] = squares[7];
-                squares[7] = Piece.EMPTY.ordinal();
+            if (to == 62) { // white O-O
+                movePiece(63, 61);
+            } else if (to == 6) { // black O-O
+                movePiece(7, 5);
             }
-        } else if (m.flag == Flag.QC) {
-            if (m.to == 58) { // white O-O-O
-                squares[59] = squares[56];
-                squares[56] = Piece.EMPTY.ordinal();
-            } else if (m.to == 2) { // black O-O-O
-                squares[3] = squares[0];
-                squares[0] = Piece.EMPTY.ordinal();
+        } else if (flag == FLAG_QC) {
+            if (to == 58) { // white O-O-O
+                movePiece(56, 59);
+            } else if (to == 2) { // black O-O-O
+                movePiece(0, 3);
             }
         }
 
         // update castling rights: clear bits when king or rook moves / captured
         // When king moves, clear both bits for that color
-        if (st.movedPiece == Piece.WK.ordinal()) {
+        if (moved == Piece.WK.ordinal()) {
             castlingRight &= ~((1 << 0) | (1 << 1)); // clear white KQ
         }
-        if (st.movedPiece == Piece.BK.ordinal()) {
+        if (moved == Piece.BK.ordinal()) {
             castlingRight &= ~((1 << 2) | (1 << 3)); // clear black KQ
         }
         // if rook a1/h1 or a8/h8 moves or is captured, clear corresponding bit
-        if (st.from == 56 || st.to == 56) castlingRight &= ~(1 << 1); // white a1 (Q)
-        if (st.from == 63 || st.to == 63) castlingRight &= ~(1 << 0); // white h1 (K)
-        if (st.from == 0 || st.to == 0) castlingRight &= ~(1 << 3);   // black a8 (Q)
-        if (st.from == 7 || st.to == 7) castlingRight &= ~(1 << 2);   // black h8 (K)
+        if (from == 56 || to == 56) castlingRight &= ~(1 << 1); // white a1 (Q)
+        if (from == 63 || to == 63) castlingRight &= ~(1 << 0); // white h1 (K)
+        if (from == 0 || to == 0) castlingRight &= ~(1 << 3);   // black a8 (Q)
+        if (from == 7 || to == 7) castlingRight &= ~(1 << 2);   // black h8 (K)
 
         // halfmove clock
-        if (st.movedPiece == Piece.WP.ordinal() || st.movedPiece == Piece.BP.ordinal() || st.capPiece != Piece.EMPTY.ordinal()) {
+        if (moved == Piece.WP.ordinal() || moved == Piece.BP.ordinal() || captured != Piece.EMPTY.ordinal()) {
             this.halfMoveClock = 0;
         } else {
             this.halfMoveClock++;
         }
 
         // fullmove number increments after black moves
-        if (!this.whiteToMove) this.fullMoveNum++;
+        if (!white) this.fullMoveNum++;
 
         // flip side
-        this.whiteToMove = !this.whiteToMove;
+        this.whiteToMove = !white;
+
+        // pieces were hashed as they moved, fold in the rest of the state
+        key ^= Zobrist.CASTLING[prevCastling] ^ Zobrist.CASTLING[castlingRight];
+        if (prevEnPassant != -1) key ^= Zobrist.EN_PASSANT[prevEnPassant % 8];
+        if (enPassantSquare != -1) key ^= Zobrist.EN_PASSANT[enPassantSquare % 8];
+        key ^= Zobrist.SIDE;
+
+        if (DEBUG_HASH) checkKey();
     }
 
     public void undoMove() {
-        if (history.isEmpty()) return;
-        BoardState st = history.pop(); // restore real previous state
+        if (undoCount == undoBase) return;
+        undoCount--;
+        int u = undoCount * UNDO_STRIDE;
+        int m = undo[u + U_MOVE];
+        int from = Move.from(m);
+        int to = Move.to(m);
+        int flag = Move.flag(m);
+        int captured = undo[u + U_CAPTURED];
 
         // restore meta
-        this.whiteToMove = st.prevWhiteToMove;
-        this.enPassantSquare = st.preEnPassant;
-        this.castlingRight = st.prevCastlingRight;
-        this.halfMoveClock = st.prevHalfMove;
-        this.fullMoveNum = st.prevFullMove;
+        this.whiteToMove = !whiteToMove;
+        this.enPassantSquare = undo[u + U_EP];
+        this.castlingRight = undo[u + U_CASTLING];
+        this.halfMoveClock = undo[u + U_HALFMOVE];
+        this.fullMoveNum = undo[u + U_FULLMOVE];
+
+        // undo promotion: put the pawn back
+        if (Move.promo(m) != 0) {
+            removeRaw(to);
+            putRaw(to, whiteToMove ? Piece.WP.ordinal() : Piece.BP.ordinal());
+        }
 
         // restore pieces
-        squares[st.from] = st.movedPiece;
-        squares[st.to] = st.capPiece;
-
-        // undo en-passant (restore captured pawn and clear target)
-        if (st.flag == Flag.EN_PASSANT) {
-            int capSq = st.prevWhiteToMove ? st.to + 8 : st.to - 8;
-            squares[capSq] = st.capPiece;
-            squares[st.to] = Piece.EMPTY.ordinal();
+        moveRaw(to, from);
+        if (flag == FLAG_EN_PASSANT) {
+            // restore captured pawn behind the target
+            putRaw(whiteToMove ? to + 8 : to - 8, captured);
+        } else if (captured != Piece.EMPTY.ordinal()) {
+            putRaw(to, captured);
         }
 
         // undo castling rook move
-        if (st.flag == Flag.KC) {
-            if (st.to == 62) { // white
-                squares[63] = squares[61];
-                squares[61] = Piece.EMPTY.ordinal();
-            } else if (st.to == 6) { // black
-                squares[7] = squares[5];
-                squares[5] = Piece.EMPTY.ordinal();
+        if (flag == FLAG_KC) {
+            if (to == 62) { // white
+                moveRaw(61, 63);
+            } else if (to == 6) { // black
+                moveRaw(5, 7);
             }
-        } else if (st.flag == Flag.QC) {
-            if (st.to == 58) {
-                squares[56] = squares[59];
-                squares[59] = Piece.EMPTY.ordinal();
-            } else if (st.to == 2) {
-                squares[0] = squares[3];
-                squares[3] = Piece.EMPTY.ordinal();
+        } else if (flag == FLAG_QC) {
+            if (to == 58) {
+                moveRaw(59, 56);
+            } else if (to == 2) {
+                moveRaw(3, 0);
             }
         }
 
-        // undo promotion: put pawn back on from square (movedPiece holds pawn ordinal)
-        if (st.promotion != -1) {
-            if (st.movedPiece == Piece.WP.ordinal()) squares[st.from] = Piece.WP.ordinal();
-            else if (st.movedPiece == Piece.BP.ordinal()) squares[st.from] = Piece.BP.ordinal();
+        // the raw helpers leave key and eval alone, the saved values are exact
+        this.key = undoKey[undoCount];
+        this.pawnKey = undoPawnKey[undoCount];
+        this.mgScore = undo[u + U_MG];
+        this.egScore = undo[u + U_EG];
+        this.phase = undo[u + U_PHASE];
+        if (DEBUG_HASH) checkKey();
+    }
+
+    // ------------------ bitboard upkeep ------------------
+
+    // every change to squares[] goes through these so the bitboards never drift
+    private void putPiece(int sq, int piece) {
+        long bit = 1L << sq;
+        squares[sq] = piece;
+        key ^= Zobrist.PIECE[piece][sq];
+        if (piece == Piece.WP.ordinal() || piece == Piece.BP.ordinal()) pawnKey ^= Zobrist.PIECE[piece][sq];
+        pieceBB[piece] |= bit;
+        colorBB[Piece.color(piece)] |= bit;
+        occupied |= bit;
+        pieceCount[piece]++;
+        mgScore += Evaluation.MG[piece][sq];
+        egScore += Evaluation.EG[piece][sq];
+        phase += Evaluation.PHASE[piece];
+        if (piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal()) kingSq[Piece.color(piece)] = sq;
+    }
+
+    private void removePiece(int sq) {
+        int piece = squares[sq];
+        long bit = 1L << sq;
+        squares[sq] = Piece.EMPTY.ordinal();
+        key ^= Zobrist.PIECE[piece][sq];
+        if (piece == Piece.WP.ordinal() || piece == Piece.BP.ordinal()) pawnKey ^= Zobrist.PIECE[piece][sq];
+        pieceBB[piece] &= ~bit;
+        colorBB[Piece.color(piece)] &= ~bit;
+        occupied &= ~bit;
+        pieceCount[piece]--;
+        mgScore -= Evaluation.MG[piece][sq];
+        egScore -= Evaluation.EG[piece][sq];
+        phase -= Evaluation.PHASE[piece];
+        if (piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal()) kingSq[Piece.color(piece)] = -1;
+    }
+
+    /** move the piece on 'from' to the empty square 'to' */
+    private void movePiece(int from, int to) {
+        int piece = squares[from];
+        long mask = (1L << from) | (1L << to);
+        squares[to] = piece;
+        squares[from] = Piece.EMPTY.ordinal();
+        key ^= Zobrist.PIECE[piece][from] ^ Zobrist.PIECE[piece][to];
+        if (piece == Piece.WP.ordinal() || piece == Piece.BP.ordinal()) {
+            pawnKey ^= Zobrist.PIECE[piece][from] ^ Zobrist.PIECE[piece][to];
+        }
+        pieceBB[piece] ^= mask;
+        colorBB[Piece.color(piece)] ^= mask;
+        occupied ^= mask;
+        mgScore += Evaluation.MG[piece][to] - Evaluation.MG[piece][from];
+        egScore += Evaluation.EG[piece][to] - Evaluation.EG[piece][from];
+        if (piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal()) kingSq[Piece.color(piece)] = to;
+    }
+
+    // undo variants: squares, bitboards, counts and king squares only,
+    // undoMove restores key and eval totals from the history record
+    private void putRaw(int sq, int piece) {
+        long bit = 1L << sq;
+        squares[sq] = piece;
+        pieceBB[piece] |= bit;
+        colorBB[Piece.color(piece)] |= bit;
+        occupied |= bit;
+        pieceCount[piece]++;
+        if (piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal()) kingSq[Piece.color(piece)] = sq;
+    }
+
+    private void removeRaw(int sq) {
+        int piece = squares[sq];
+        long bit = 1L << sq;
+        squares[sq] = Piece.EMPTY.ordinal();
+        pieceBB[piece] &= ~bit;
+        colorBB[Piece.color(piece)] &= ~bit;
+        occupied &= ~bit;
+        pieceCount[piece]--;
+        if (piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal()) kingSq[Piece.color(piece)] = -1;
+    }
+
+    private void moveRaw(int from, int to) {
+        int piece = squares[from];
+        long mask = (1L << from) | (1L << to);
+        squares[to] = piece;
+        squares[from] = Piece.EMPTY.ordinal();
+        pieceBB[piece] ^= mask;
+        colorBB[Piece.color(piece)] ^= mask;
+        occupied ^= mask;
+        if (piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal()) kingSq[Piece.color(piece)] = to;
+    }
+
+    /** rebuild bitboards and key from squares[] and the state fields (call after editing them directly) */
+    public void refresh() {
+        java.util.Arrays.fill(pieceBB, 0L);
+        java.util.Arrays.fill(pieceCount, 0);
+        colorBB[0] = colorBB[1] = 0L;
+        occupied = 0L;
+        kingSq[0] = kingSq[1] = -1;
+        mgScore = egScore = phase = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = squares[sq];
+            if (piece == Piece.EMPTY.ordinal()) continue;
+            long bit = 1L << sq;
+            pieceBB[piece] |= bit;
+            colorBB[Piece.color(piece)] |= bit;
+            occupied |= bit;
+            pieceCount[piece]++;
+            mgScore += Evaluation.MG[piece][sq];
+            egScore += Evaluation.EG[piece][sq];
+            phase += Evaluation.PHASE[piece];
+            if (piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal()) kingSq[Piece.color(piece)] = sq;
+        }
+        key = Zobrist.compute(this);
+        pawnKey = Zobrist.computePawnKey(this);
+    }
+
+    /** debug: compare the incremental key with a full recomputation */
+    private void checkKey() {
+        long expected = Zobrist.compute(this);
+        if (key != expected) {
+            throw new IllegalStateException("zobrist key drifted: " + Long.toHexString(key)
+                    + " != " + Long.toHexString(expected));
+        }
+        long expectedPawns = Zobrist.computePawnKey(this);
+        if (pawnKey != expectedPawns) {
+            throw new IllegalStateException("pawn key drifted: " + Long.toHexString(pawnKey)
+                    + " != " + Long.toHexString(expectedPawns));
         }
     }
 
     // ------------------ helpers ------------------
 
-    /** find king square for color */
+    /** find king square for color (tracked by the piece helpers, no scan) */
     public int findKingSq(boolean white) {
-        int kingPiece = white ? Piece.WK.ordinal() : Piece.BK.ordinal();
-        for (int i = 0; i < 64; i++) if (squares[i] == kingPiece) return i;
-        return -1;
+        return kingSq[white ? 0 : 1];
     }
 
     /** is color 'white' in check? (uses isUnderAttack, NOT MoveGenerator) */
     public boolean isInCheck(boolean white) {
         int kingSquare = findKingSq(white);
         if (kingSquare == -1) return false;
-        return isUnderAttack(kingSquare, !white);
+        if (!Metrics.ENABLED || !Metrics.sample()) return isUnderAttack(kingSquare, !white);
+        long t0 = System.nanoTime();
+        boolean check = isUnderAttack(kingSquare, !white);
+        Metrics.inCheckNanos.add((System.nanoTime() - t0) * Metrics.SAMPLE);
+        return check;
     }
 
     /**
@@ -240,9 +670,6 @@ public class Board {
     public boolean isUnderAttack(int square, boolean byWhite) {
         if (square < 0 || square >= 64) return false;
 
-        int sqRow = square / 8;
-        int sqCol = square % 8;
-
         int pawn = byWhite ? Piece.WP.ordinal() : Piece.BP.ordinal();
         int knight = byWhite ? Piece.WN.ordinal() : Piece.BN.ordinal();
         int bishop = byWhite ? Piece.WB.ordinal() : Piece.BB.ordinal();
@@ -250,80 +677,27 @@ public class Board {
         int queen = byWhite ? Piece.WQ.ordinal() : Piece.BQ.ordinal();
         int king = byWhite ? Piece.WK.ordinal() : Piece.BK.ordinal();
 
-        // pawn attacks (sources)
-        int src = square + (byWhite ? 7 : -7);
-        if (src >= 0 && src < 64) {
-            int srcCol = src % 8;
-            if (Math.abs(srcCol - sqCol) == 1 && squares[src] == pawn) return true;
-        }
-        src = square + (byWhite ? 9 : -9);
-        if (src >= 0 && src < 64) {
-            int srcCol = src % 8;
-            if (Math.abs(srcCol - sqCol) == 1 && squares[src] == pawn) return true;
-        }
+        // pawn attacks: look from the square with the opposite colour's pawn pattern
+        if ((Bitboards.PAWN[byWhite ? 1 : 0][square] & pieceBB[pawn]) != 0) return true;
+        if ((Bitboards.KNIGHT[square] & pieceBB[knight]) != 0) return true;
+        if ((Bitboards.KING[square] & pieceBB[king]) != 0) return true;
 
-        // knight attacks
-        int[] knightOffsets = {17, 15, 10, 6, -6, -10, -15, -17};
-        for (int off : knightOffsets) {
-            int s = square + off;
-            if (s < 0 || s >= 64) continue;
-            int rDiff = Math.abs((s / 8) - sqRow);
-            int cDiff = Math.abs((s % 8) - sqCol);
-            if (!((rDiff == 2 && cDiff == 1) || (rDiff == 1 && cDiff == 2))) continue;
-            if (squares[s] == knight) return true;
-        }
-
-        // king adjacency
-        int[] kingOffsets = {-9, -8, -7, 1, 9, 8, 7, -1};
-        for (int off : kingOffsets) {
-            int s = square + off;
-            if (s < 0 || s >= 64) continue;
-            int rDiff = Math.abs((s / 8) - sqRow);
-            int cDiff = Math.abs((s % 8) - sqCol);
-            if (rDiff > 1 || cDiff > 1) continue;
-            if (squares[s] == king) return true;
-        }
-
-        // sliding orthogonals (rook/queen)
-        int[] orth = {-8, 8, -1, 1};
-        for (int off : orth) {
-            int s = square;
-            while (true) {
-                s += off;
-                if (s < 0 || s >= 64) break;
-                // horizontal wrap check
-                if (off == -1 || off == 1) {
-                    int prevCol = (s - off) % 8;
-                    if (prevCol < 0) prevCol += 8;
-                    int curCol = s % 8;
-                    if (Math.abs(curCol - prevCol) != 1) break;
-                }
-                int piece = squares[s];
-                if (piece == Piece.EMPTY.ordinal()) continue;
-                if (piece == rook || piece == queen) return true;
-                break;
-            }
-        }
-
-        // diagonal (bishop/queen)
-        int[] diag = {-9, -7, 7, 9};
-        for (int off : diag) {
-            int s = square;
-            while (true) {
-                s += off;
-                if (s < 0 || s >= 64) break;
-                int prevCol = (s - off) % 8;
-                if (prevCol < 0) prevCol += 8;
-                int curCol = s % 8;
-                if (Math.abs(curCol - prevCol) != 1) break;
-                int piece = squares[s];
-                if (piece == Piece.EMPTY.ordinal()) continue;
-                if (piece == bishop || piece == queen) return true;
-                break;
-            }
-        }
+        // sliders
+        if ((Bitboards.bishopAttacks(square, occupied) & (pieceBB[bishop] | pieceBB[queen])) != 0) return true;
+        return (Bitboards.rookAttacks(square, occupied) & (pieceBB[rook] | pieceBB[queen])) != 0;
+    }
 
-        return false;
+    /** every piece of either colour attacking 'square', with 'occ' as the blockers */
+    public long attackersTo(int square, long occ) {
+        long bishops = pieceBB[Piece.WB.ordinal()] | pieceBB[Piece.BB.ordinal()];
+        long rooks = pieceBB[Piece.WR.ordinal()] | pieceBB[Piece.BR.ordinal()];
+        long queens = pieceBB[Piece.WQ.ordinal()] | pieceBB[Piece.BQ.ordinal()];
+        return (Bitboards.PAWN[1][square] & pieceBB[Piece.WP.ordinal()])
+                | (Bitboards.PAWN[0][square] & pieceBB[Piece.BP.ordinal()])
+                | (Bitboards.KNIGHT[square] & (pieceBB[Piece.WN.ordinal()] | pieceBB[Piece.BN.ordinal()]))
+                | (Bitboards.KING[square] & (pieceBB[Piece.WK.ordinal()] | pieceBB[Piece.BK.ordinal()]))
+                | (Bitboards.bishopAttacks(square, occ) & (bishops | queens))
+                | (Bitboards.rookAttacks(square, occ) & (rooks | queens));
     }
 
     /** whether both castling bits for that color are cleared => king moved (or rights lost) */
@@ -346,7 +720,7 @@ public class Board {
         int step = (end > start) ? 1 : -1;
         for (int s = start + step; s != end; s += step) {
             if (s < 0 || s >= 64) return false;
-            if (squares[s] != Piece.EMPTY.ordinal()) return false;
+            if ((occupied & (1L << s)) != 0) return false;
         }
         return true;
     }
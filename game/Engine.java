@@ -1,31 +1,70 @@
 package game;
 
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 public class Engine {
     public Board board;
     public boolean whiteToMove;
+    // shared across searches, size from -Dchess.hashMb (default 16MB)
+    public TranspositionTable tt;
+    // optional, shared by perft and perftParallel when set
+    public PerftCache perftCache;
+    // optional opening book (-Dchess.book=<file.bin>), consulted before searching
+    public PolyglotBook book;
+    public Random bookRandom = new Random();
+    // optional endgame bitbases (-Dchess.bitbases=<dir>, see BitbaseGenerator)
+    public Bitbases bitbases;
 
     public Engine() {
         // board is set up already
         board = new Board();
         whiteToMove = true;
+        tt = new TranspositionTable(Integer.getInteger("chess.hashMb", 16));
+        String bookFile = System.getProperty("chess.book");
+        if (bookFile != null) openBook(bookFile);
+        String bitbaseDir = System.getProperty("chess.bitbases");
+        if (bitbaseDir != null) openBitbases(bitbaseDir);
     }
 
-    public void printAllMoves() {
-        List<Move> Allmoves = MoveGenerator.Moves(board, whiteToMove);
-        List<Move> legalMoves = new ArrayList<>();
+    /** open (or with null, drop) the opening book; a book that fails to open is reported and ignored */
+    public void openBook(String file) {
+        try {
+            if (book != null) book.close();
+            book = null;
+            if (file != null && !file.isEmpty()) book = new PolyglotBook(Paths.get(file));
+        } catch (IOException e) {
+            System.err.println("opening book not used: " + e.getMessage());
+        }
+    }
 
-        for (Move m : Allmoves) {
-            board.makeMove(m);
-            if (!board.isInCheck(!board.whiteToMove)) {
-                legalMoves.add(m);
-            }
-            board.undoMove();
+    /** map the bitbases in dir (or with null, drop them); a directory that fails to open is reported and ignored */
+    public void openBitbases(String dir) {
+        bitbases = null;
+        if (dir == null || dir.isEmpty()) return;
+        try {
+            Bitbases b = Bitbases.open(Paths.get(dir));
+            if (b.count() == 0) System.err.println("no bitbases in " + dir);
+            else bitbases = b;
+        } catch (IOException e) {
+            System.err.println("bitbases not used: " + e.getMessage());
         }
+    }
+
+    /** a weighted random book move for the engine's board, Move.NONE when out of book */
+    public int bookMove() {
+        return book == null ? Move.NONE : book.probe(board, bookRandom);
+    }
+
+    public void printAllMoves() {
+        List<Move> legalMoves = generateLegalMoves();
 
         for(Move m : legalMoves){
             System.out.println(m);
@@ -37,91 +76,101 @@ public class Engine {
 
     // Perft test
     public long perft(Board board, int depth) {
+        return perft(board, depth, new MoveStack(depth), 0, perftCache);
+    }
+
+    static long perft(Board board, int depth, MoveStack stack, int ply) {
+        return perft(board, depth, stack, ply, null);
+    }
+
+    // legal moves into one preallocated stack, no allocation per node;
+    // cache may be null, depth-1 subtrees are too cheap to be worth caching
+    static long perft(Board board, int depth, MoveStack stack, int ply, PerftCache cache) {
         if (depth == 0) return 1;
+        // every generated move is legal, so the last ply is just a count
+        if (depth == 1) return stack.fill(board, ply) - stack.start(ply);
+        if (cache != null) {
+            long cached = cache.probe(board.key, depth);
+            if (cached >= 0) return cached;
+        }
         long nodes = 0;
-        List<Move> moves = MoveGenerator.Moves(board, board.whiteToMove);
-        for (Move m : moves) {
-            board.makeMove(m);
-            if (!board.isInCheck(!board.whiteToMove)) {
-                nodes += perft(board, depth - 1);
-            }
+        int end = stack.fill(board, ply);
+        for (int i = stack.start(ply); i < end; i++) {
+            board.makeMove(stack.moves[i]);
+            nodes += perft(board, depth - 1, stack, ply + 1, cache);
             board.undoMove();
         }
+        if (cache != null) cache.store(board.key, depth, nodes);
         return nodes;
     }
+
+    /** same count as perft, split over all cores (see ParallelPerft) */
+    public long perftParallel(Board board, int depth) {
+        return new ParallelPerft(ForkJoinPool.commonPool(), ParallelPerft.DEFAULT_SPLIT_PLIES, perftCache).perft(board, depth);
+    }
+
     public long perftDivide(Board board, int depth) {
         long total = 0;
-        List<Move> moves = MoveGenerator.Moves(board, board.whiteToMove);
+        List<Move> moves = MoveGenerator.legalMoves(board);
         for (Move m : moves) {
             board.makeMove(m);
-            long nodes = 0;
-            if (!board.isInCheck(!board.whiteToMove)) {
-                nodes = perft(board, depth - 1);
-                total += nodes;
-                System.out.println(m + ": " + nodes);
-            }
+            long nodes = perft(board, depth - 1);
+            total += nodes;
+            System.out.println(m + ": " + nodes);
             board.undoMove();
         }
         System.out.println("Total: " + total);
         return total;
     }
     public List<Move> generateLegalMoves() {
-        List<Move> allMoves = MoveGenerator.Moves(board, whiteToMove);
-        List<Move> legalMoves = new ArrayList<>();
-
-        for (Move m : allMoves) {
-            board.makeMove(m);
-            if (!board.isInCheck(!board.whiteToMove)) {
-                legalMoves.add(m);
-            }
-            board.undoMove();
-        }
-        return legalMoves;
+        return MoveGenerator.legalMoves(board);
     }
 
 
     // --- Evaluation ---
+    // Board keeps the material/piece-square totals up to date and the pawn terms
+    // come from a pawn table; one per calling thread, since sessions share the engine
+    private final ThreadLocal<PawnTable> pawns = ThreadLocal.withInitial(PawnTable::new);
+
     public int evaluate(Board board) {
-        int score = 0;
-        for (int i = 0; i < 64; i++) {
-            int sq = board.squares[i];
-            switch (sq) {
-                case 1: score += 100; break; // BP
-                case 2: score += 320; break; // BN
-                case 3: score += 330; break; // BB
-                case 4: score += 900; break; // BQ
-                case 5: score += 20000; break; // BK
-                case 6: score += 500; break; // BR
-                case 7: score -= 100; break; // WP
-                case 8: score -= 320; break; // WN
-                case 9: score -= 330; break; // WB
-                case 10: score -= 900; break; // WQ
-                case 11: score -= 20000; break; // WK
-                case 12: score -= 500; break; // WR
-                default: break;
-            }
-        }
-        return board.whiteToMove ? score : -score;
+        return Evaluation.evaluate(board, pawns.get());
     }
 
-    // --- Pick best move (simple) ---
-    public Move pickBestMove() {
-        List<Move> moves = generateLegalMoves();
-        Move bestMove = null;
-        int bestScore = Integer.MIN_VALUE;
+    // --- Search ---
+    // default limits used by pickBestMove
+    public int searchDepth = 64;
+    public long searchTimeMs = 1000;
+    // search threads, more than one runs Lazy SMP (-Dchess.threads)
+    public int threads = Integer.getInteger("chess.threads", 1);
+    // per-thread depth/nodes of the last Lazy SMP search
+    public List<LazySmp.ThreadReport> threadReports = new ArrayList<>();
+    // the search behind the last pickBestMove, null when it came from the book
+    public Search.Result lastResult;
 
-        for (Move m : moves) {
-            board.makeMove(m);
-            int score = evaluate(board);
-            board.undoMove();
+    /** search the engine's board; 0 means no limit for depth, nodes or time */
+    public Search.Result search(int depth, long nodes, long timeMs) {
+        if (threads <= 1) return new Search(this, board).search(depth, nodes, timeMs);
+        LazySmp smp = new LazySmp(this, threads);
+        Search.Result r = smp.search(board, depth, nodes, timeMs);
+        threadReports = smp.reports;
+        return r;
+    }
 
-            if (score > bestScore) {
-                bestScore = score;
-                bestMove = m;
-            }
-        }
+    /** book move or searched move (see lastResult), null when there is no legal move */
+    public Move pickBestMove() {
+        lastResult = null;
+        int bm = bookMove();
+        if (bm != Move.NONE) return Move.unpack(bm);
+        lastResult = search(searchDepth, 0, searchTimeMs);
+        if (lastResult.bestMove == Move.NONE) return null;
+        return Move.unpack(lastResult.bestMove);
+    }
 
-        return bestMove;
+    /** the draw either player may claim in the current position, null if none */
+    public String drawClaim() {
+        if (board.isRepetition(2)) return "threefold repetition";
+        if (board.halfMoveClock >= 100) return "fifty-move rule";
+        return null;
     }
 
     // --- Tiny CLI loop ---
@@ -168,6 +217,12 @@ public class Engine {
             if (selected != null) {
                 board.makeMove(selected);
                 whiteToMove = !whiteToMove;
+                String draw = drawClaim();
+                if (draw != null) {
+                    board.printBoard();
+                    System.out.println("Draw: " + draw);
+                    break;
+                }
             } else {
                 System.out.println("Illegal move, try again.");
             }
@@ -176,7 +231,15 @@ public class Engine {
     }
 
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length > 0 && args[0].equals("uci")) {
+            Uci.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            SessionServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Engine e = new Engine();
         e.board.printBoard();
 
@@ -188,6 +251,14 @@ public class Engine {
 
         // --- Best move demo ---
         Move best = e.pickBestMove();
+        if (e.lastResult == null) {
+            System.out.println("book " + best);
+        } else {
+            System.out.println(e.lastResult);
+            if (e.threads > 1) {
+                for (LazySmp.ThreadReport t : e.threadReports) System.out.println("  " + t);
+            }
+        }
         System.out.println("Best move at start: " + best);
 
         // --- Optional CLI ---
@@ -0,0 +1,264 @@
+package game;
+
+
+/**
+ * Material + piece-square evaluation plus pawn structure, tapered between
+ * middlegame and endgame.
+ *
+ * Board keeps mgScore, egScore (white minus black) and phase as running totals
+ * through its piece helpers. The pawn terms depend only on pawn placement and
+ * are cached by Board.pawnKey in a PawnTable, so a search evaluates in O(1)
+ * whenever the pawn structure has been seen before. Tables are written from
+ * white's side with a8 first, the same order as Board.squares; black uses the
+ * vertically mirrored square (sq ^ 56).
+ */
+public final class Evaluation {
+
+    // P, N, B, R, Q, K
+    private static final int[] MG_VALUE = {82, 337, 365, 477, 1025, 0};
+    private static final int[] EG_VALUE = {94, 281, 297, 512, 936, 0};
+    private static final int[] PHASE_WEIGHT = {0, 1, 1, 2, 4, 0};
+    public static final int MAX_PHASE = 24;
+
+    private static final int[] PAWN_PST = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+        50, 50, 50, 50, 50, 50, 50, 50,
+        10, 10, 20, 30, 30, 20, 10, 10,
+         5,  5, 10, 25, 25, 10,  5,  5,
+         0,  0,  0, 20, 20,  0,  0,  0,
+         5, -5,-10,  0,  0,-10, -5,  5,
+         5, 10, 10,-20,-20, 10, 10,  5,
+         0,  0,  0,  0,  0,  0,  0,  0,
+    };
+    // in the endgame only how far a pawn has got matters
+    private static final int[] PAWN_EG_PST = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+        80, 80, 80, 80, 80, 80, 80, 80,
+        50, 50, 50, 50, 50, 50, 50, 50,
+        30, 30, 30, 30, 30, 30, 30, 30,
+        15, 15, 15, 15, 15, 15, 15, 15,
+         5,  5,  5,  5,  5,  5,  5,  5,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0,
+    };
+    private static final int[] KNIGHT_PST = {
+        -50,-40,-30,-30,-30,-30,-40,-50,
+        -40,-20,  0,  0,  0,  0,-20,-40,
+        -30,  0, 10, 15, 15, 10,  0,-30,
+        -30,  5, 15, 20, 20, 15,  5,-30,
+        -30,  0, 15, 20, 20, 15,  0,-30,
+        -30,  5, 10, 15, 15, 10,  5,-30,
+        -40,-20,  0,  5,  5,  0,-20,-40,
+        -50,-40,-30,-30,-30,-30,-40,-50,
+    };
+    private static final int[] BISHOP_PST = {
+        -20,-10,-10,-10,-10,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5, 10, 10,  5,  0,-10,
+        -10,  5,  5, 10, 10,  5,  5,-10,
+        -10,  0, 10, 10, 10, 10,  0,-10,
+        -10, 10, 10, 10, 10, 10, 10,-10,
+        -10,  5,  0,  0,  0,  0,  5,-10,
+        -20,-10,-10,-10,-10,-10,-10,-20,
+    };
+    private static final int[] ROOK_PST = {
+          0,  0,  0,  0,  0,  0,  0,  0,
+          5, 10, 10, 10, 10, 10, 10,  5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+          0,  0,  0,  5,  5,  0,  0,  0,
+    };
+    private static final int[] QUEEN_PST = {
+        -20,-10,-10, -5, -5,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5,  5,  5,  5,  0,-10,
+         -5,  0,  5,  5,  5,  5,  0, -5,
+          0,  0,  5,  5,  5,  5,  0, -5,
+        -10,  5,  5,  5,  5,  5,  0,-10,
+        -10,  0,  5,  0,  0,  0,  0,-10,
+        -20,-10,-10, -5, -5,-10,-10,-20,
+    };
+    private static final int[] KING_MG_PST = {
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -20,-30,-30,-40,-40,-30,-30,-20,
+        -10,-20,-20,-20,-20,-20,-20,-10,
+         20, 20,  0,  0,  0,  0, 20, 20,
+         20, 30, 10,  0,  0, 10, 30, 20,
+    };
+    private static final int[] KING_EG_PST = {
+        -50,-40,-30,-20,-20,-30,-40,-50,
+        -30,-20,-10,  0,  0,-10,-20,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-30,  0,  0,  0,  0,-30,-30,
+        -50,-30,-30,-30,-30,-30,-30,-50,
+    };
+
+    // pawn structure, per pawn (passed by relative rank, 1 = still on its 2nd rank)
+    private static final int DOUBLED_MG = -10, DOUBLED_EG = -20;
+    private static final int ISOLATED_MG = -10, ISOLATED_EG = -15;
+    private static final int BACKWARD_MG = -8, BACKWARD_EG = -10;
+    private static final int[] PASSED_MG = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_EG = {0, 10, 15, 25, 40, 65, 100, 0};
+    // king shield, per file of the king's wing: pawn unmoved, pawn one step up, no pawn
+    private static final int SHIELD_2ND = 10, SHIELD_3RD = 5, SHIELD_NONE = -10;
+
+    // layout of the pawn terms (see pawnTerms): white-minus-black mg and eg, then
+    // the shield of white and of black for a king on each wing (a-c, d-e, f-h)
+    public static final int PAWN_MG = 0, PAWN_EG = 1, SHIELD = 2, PAWN_TERMS = 8;
+    private static final long[] WING = new long[3];
+    private static final long[] ADJACENT_FILES = new long[8];
+    // [colour][square]: squares ahead on the same and adjacent files (passed pawn test),
+    // squares beside and behind on the adjacent files (backward pawn test)
+    private static final long[][] PASSED_SPAN = new long[2][64];
+    private static final long[][] SUPPORT_SPAN = new long[2][64];
+
+    // [piece ordinal][square], signed: white positive, black negative
+    public static final int[][] MG = new int[13][64];
+    public static final int[][] EG = new int[13][64];
+    public static final int[] PHASE = new int[13];
+
+    private Evaluation() {}
+
+    static {
+        int[][] mgPst = {PAWN_PST, KNIGHT_PST, BISHOP_PST, ROOK_PST, QUEEN_PST, KING_MG_PST};
+        int[][] egPst = {PAWN_EG_PST, KNIGHT_PST, BISHOP_PST, ROOK_PST, QUEEN_PST, KING_EG_PST};
+        for (int type = 0; type < 6; type++) {
+            int white = Piece.WP.ordinal() + type;
+            int black = Piece.BP.ordinal() + type;
+            PHASE[white] = PHASE[black] = PHASE_WEIGHT[type];
+            for (int sq = 0; sq < 64; sq++) {
+                MG[white][sq] = MG_VALUE[type] + mgPst[type][sq];
+                EG[white][sq] = EG_VALUE[type] + egPst[type][sq];
+                MG[black][sq] = -(MG_VALUE[type] + mgPst[type][sq ^ 56]);
+                EG[black][sq] = -(EG_VALUE[type] + egPst[type][sq ^ 56]);
+            }
+        }
+
+        for (int f = 0; f < 8; f++) {
+            if (f > 0) ADJACENT_FILES[f] |= Bitboards.FILE_A << (f - 1);
+            if (f < 7) ADJACENT_FILES[f] |= Bitboards.FILE_A << (f + 1);
+            WING[f < 3 ? 0 : f < 5 ? 1 : 2] |= Bitboards.FILE_A << f;
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq / 8;
+            long files = ADJACENT_FILES[sq % 8] | (Bitboards.FILE_A << (sq % 8));
+            for (int r = 0; r < 8; r++) {
+                long rank = 0xFFL << (8 * r);
+                // white moves towards row 0, black towards row 7
+                if (r < row) PASSED_SPAN[0][sq] |= files & rank;
+                if (r > row) PASSED_SPAN[1][sq] |= files & rank;
+                if (r >= row) SUPPORT_SPAN[0][sq] |= ADJACENT_FILES[sq % 8] & rank;
+                if (r <= row) SUPPORT_SPAN[1][sq] |= ADJACENT_FILES[sq % 8] & rank;
+            }
+        }
+    }
+
+    /**
+     * Static score from the side to move's point of view, with the pawn terms
+     * looked up in (or added to) a pawn table.
+     */
+    public static int evaluate(Board board, PawnTable pawns) {
+        int score;
+        if (!Metrics.ENABLED || !Metrics.sample()) {
+            score = evaluate(board, pawns.terms, pawns.probe(board));
+        } else {
+            long t0 = System.nanoTime();
+            score = evaluate(board, pawns.terms, pawns.probe(board));
+            Metrics.evalNanos.add((System.nanoTime() - t0) * Metrics.SAMPLE);
+        }
+        // with -ea every score is checked against one computed from scratch
+        assert score == evaluateFromScratch(board) : "pawn table out of date";
+        return score;
+    }
+
+    // the same score without the pawn table, for debugging
+    private static int evaluateFromScratch(Board board) {
+        int[] terms = new int[PAWN_TERMS];
+        pawnTerms(board, terms, 0);
+        return evaluate(board, terms, 0);
+    }
+
+    private static int evaluate(Board board, int[] terms, int at) {
+        int mg = board.mgScore + terms[at + PAWN_MG];
+        int eg = board.egScore + terms[at + PAWN_EG];
+        int wk = board.kingSq[0], bk = board.kingSq[1];
+        if (wk != -1) mg += terms[at + SHIELD + wingOf(wk)];
+        if (bk != -1) mg -= terms[at + SHIELD + 3 + wingOf(bk)];
+
+        int phase = Math.min(board.phase, MAX_PHASE);
+        int score = (mg * phase + eg * (MAX_PHASE - phase)) / MAX_PHASE;
+        return board.whiteToMove ? score : -score;
+    }
+
+    private static int wingOf(int sq) {
+        int f = sq % 8;
+        return f < 3 ? 0 : f < 5 ? 1 : 2;
+    }
+
+    /**
+     * Everything that depends on pawn placement alone, written to
+     * out[at .. at + PAWN_TERMS): doubled, isolated, backward and passed pawns
+     * plus the shield each side would have on each wing.
+     */
+    public static void pawnTerms(Board board, int[] out, int at) {
+        long white = board.pieceBB[Piece.WP.ordinal()], black = board.pieceBB[Piece.BP.ordinal()];
+        int mg = 0, eg = 0;
+        for (int c = 0; c < 2; c++) {
+            long own = c == 0 ? white : black, their = c == 0 ? black : white;
+            int sign = c == 0 ? 1 : -1;
+            int cmg = 0, ceg = 0;
+            for (int f = 0; f < 8; f++) {
+                int n = Long.bitCount(own & (Bitboards.FILE_A << f));
+                if (n > 1) {
+                    cmg += (n - 1) * DOUBLED_MG;
+                    ceg += (n - 1) * DOUBLED_EG;
+                }
+            }
+            for (long bb = own; bb != 0; bb &= bb - 1) {
+                int sq = Long.numberOfTrailingZeros(bb);
+                int rel = c == 0 ? 7 - sq / 8 : sq / 8;
+                if ((their & PASSED_SPAN[c][sq]) == 0) {
+                    cmg += PASSED_MG[rel];
+                    ceg += PASSED_EG[rel];
+                } else if ((own & ADJACENT_FILES[sq % 8]) == 0) {
+                    cmg += ISOLATED_MG;
+                    ceg += ISOLATED_EG;
+                } else if ((own & SUPPORT_SPAN[c][sq]) == 0) {
+                    // no neighbour can come up beside it, and its stop square is guarded by a pawn
+                    int stop = c == 0 ? sq - 8 : sq + 8;
+                    if ((Bitboards.PAWN[c][stop] & their) != 0) {
+                        cmg += BACKWARD_MG;
+                        ceg += BACKWARD_EG;
+                    }
+                }
+            }
+            mg += sign * cmg;
+            eg += sign * ceg;
+
+            long second = c == 0 ? 0xFFL << 48 : 0xFFL << 8;
+            long third = c == 0 ? 0xFFL << 40 : 0xFFL << 16;
+            for (int w = 0; w < 3; w++) {
+                int shield = 0;
+                for (int f = 0; f < 8; f++) {
+                    long file = Bitboards.FILE_A << f;
+                    if ((WING[w] & file) == 0) continue;
+                    if ((own & file & second) != 0) shield += SHIELD_2ND;
+                    else if ((own & file & third) != 0) shield += SHIELD_3RD;
+                    else shield += SHIELD_NONE;
+                }
+                out[at + SHIELD + 3 * c + w] = shield;
+            }
+        }
+        out[at + PAWN_MG] = mg;
+        out[at + PAWN_EG] = eg;
+    }
+}
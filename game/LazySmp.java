@@ -0,0 +1,142 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/**
+ * Lazy SMP: N threads search the same root, each with its own Board copy and
+ * its own Search (killers, history, move stack), sharing only the engine's
+ * transposition table. Helpers start at staggered depths so they run ahead of
+ * the main thread and fill the table with results it can reuse. The main
+ * thread owns the limits; when it finishes, the helpers are stopped and the
+ * deepest completed result is returned.
+ */
+public class LazySmp {
+
+    /** what one thread got done */
+    public static class ThreadReport {
+        public int id;
+        public int depth;
+        public long nodes;
+        public long elapsedMs;
+
+        public long nps() {
+            return elapsedMs == 0 ? nodes * 1000 : nodes * 1000 / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return "thread " + id + ": depth " + depth + " nodes " + nodes + " nps " + nps();
+        }
+    }
+
+    private final Engine engine;
+    private final int threads;
+
+    public List<ThreadReport> reports = new ArrayList<>();
+    // forwarded to the main thread's search
+    public Consumer<Search.Result> onIteration;
+
+    public LazySmp(Engine engine, int threads) {
+        this.engine = engine;
+        this.threads = Math.max(1, threads);
+    }
+
+    private volatile Search mainSearch;
+    private final List<Search> helpers = new ArrayList<>();
+    private volatile boolean stopRequested;
+
+    /** stop all threads (safe from any thread, also before search() has started) */
+    public void stop() {
+        stopRequested = true;
+        Search main = mainSearch;
+        if (main != null) main.stop();
+        synchronized (helpers) {
+            for (Search s : helpers) s.stop();
+        }
+    }
+
+    /** replace the time limit of every thread with timeMs from now, 0 for none */
+    public void setTimeLimit(long timeMs) {
+        Search main = mainSearch;
+        if (main != null) main.setTimeLimit(timeMs);
+        synchronized (helpers) {
+            for (Search s : helpers) s.setTimeLimit(timeMs);
+        }
+    }
+
+    public Search.Result search(Board root, int maxDepth, long maxNodes, long timeMs) {
+        Search.Result[] results = new Search.Result[threads];
+        Search[] searches = new Search[threads];
+        Thread[] workers = new Thread[threads - 1];
+
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new Search(engine, new Board(root));
+            if (i > 0) {
+                searches[i].helper = true;
+                // odd helpers skip ahead one ply, every fourth two
+                searches[i].startDepth = 1 + (i % 2) + (i % 4 == 3 ? 1 : 0);
+            }
+        }
+        searches[0].onIteration = onIteration;
+        mainSearch = searches[0];
+        // age the table here, before any helper stores, instead of in the main search
+        engine.tt.newSearch();
+        searches[0].helper = true;
+
+        synchronized (helpers) {
+            helpers.clear();
+            for (int i = 1; i < threads; i++) helpers.add(searches[i]);
+        }
+        // a stop() that came before mainSearch was published
+        if (stopRequested) stop();
+        for (int i = 1; i < threads; i++) {
+            final int id = i;
+            // helpers only stop when told to, or at the shared deadline
+            workers[i - 1] = new Thread(() -> results[id] = searches[id].search(0, 0, timeMs), "smp-helper-" + i);
+            workers[i - 1].setDaemon(true);
+            workers[i - 1].start();
+        }
+
+        results[0] = searches[0].search(maxDepth, maxNodes, timeMs);
+
+        for (int i = 1; i < threads; i++) {
+            searches[i].stop();
+            try {
+                workers[i - 1].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        mainSearch = null;
+
+        // deepest finished iteration wins, the main thread on ties
+        Search.Result best = results[0];
+        long totalNodes = 0;
+        reports = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Search.Result r = results[i];
+            // a helper we were interrupted waiting for
+            if (r == null) continue;
+            ThreadReport rep = new ThreadReport();
+            rep.id = i;
+            rep.depth = r.depth;
+            rep.nodes = r.nodes;
+            rep.elapsedMs = r.elapsedMs;
+            reports.add(rep);
+            totalNodes += r.nodes;
+            if (r.bestMove != Move.NONE && r.depth > best.depth) best = r;
+        }
+
+        Search.Result out = new Search.Result();
+        out.bestMove = best.bestMove;
+        out.score = best.score;
+        out.pv = best.pv;
+        out.depth = best.depth;
+        out.nodes = totalNodes;
+        out.elapsedMs = results[0].elapsedMs;
+        return out;
+    }
+}
@@ -0,0 +1,199 @@
+package game;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Engine counters, off unless the JVM runs with -Dchess.metrics=true.
+ *
+ * Every hook is written as {@code if (Metrics.ENABLED) ...}. ENABLED is a
+ * static final, so with metrics off the JIT drops the branch and the hooks
+ * cost nothing. With metrics on, the counters are LongAdders, so Lazy SMP
+ * threads do not contend on one cache line.
+ *
+ * The counters are published two ways:
+ *  - a game.EngineMetrics JFR event every second, plus a
+ *    game.SearchIteration event per finished iteration (record with
+ *    -XX:StartFlightRecording);
+ *  - a summary line on stderr every -Dchess.metricsIntervalMs (default
+ *    1000, 0 = never), showing the change since the previous line.
+ *
+ * Move generation, in-check tests and evaluation are timed on a sample of
+ * one call in -Dchess.metricsSample (default 64, rounded up to a power of
+ * two), and the sampled time is scaled up by the same factor; two
+ * System.nanoTime() calls per call would cost more than an in-check test.
+ * Their percentages are of the search threads' time (wall time x threads
+ * searching), so they stay under 100% with Lazy SMP.
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("chess.metrics");
+
+    public static final LongAdder nodes = new LongAdder();
+    public static final LongAdder qnodes = new LongAdder();
+    public static final LongAdder ttProbes = new LongAdder();
+    public static final LongAdder ttHits = new LongAdder();
+    public static final LongAdder ttCutoffs = new LongAdder();
+    public static final LongAdder betaCutoffs = new LongAdder();
+    public static final LongAdder firstMoveCutoffs = new LongAdder();
+    // moves the staged pickers generated, against the ones search actually played
+    public static final LongAdder movesGenerated = new LongAdder();
+    public static final LongAdder movesSearched = new LongAdder();
+    public static final LongAdder moveGenNanos = new LongAdder();
+    public static final LongAdder inCheckNanos = new LongAdder();
+    public static final LongAdder evalNanos = new LongAdder();
+    // effective branching factor of the last finished iteration, x100
+    private static volatile long ebf100;
+
+    /** calls timed per call sampled; a power of two */
+    public static final int SAMPLE = Integer.highestOneBit(Math.max(1, Integer.getInteger("chess.metricsSample", 64) * 2 - 1));
+    // searches running now, and the most running at once since the last summary line
+    private static final AtomicInteger searching = new AtomicInteger();
+    private static final AtomicInteger peakSearching = new AtomicInteger();
+
+    private Metrics() {}
+
+    static {
+        if (ENABLED) {
+            FlightRecorder.addPeriodicEvent(MetricsEvent.class, Metrics::emitPeriodic);
+            long interval = Long.getLong("chess.metricsIntervalMs", 1000);
+            if (interval > 0) {
+                Thread t = new Thread(() -> printLoop(interval), "metrics");
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /** should this call be timed? true for about one call in SAMPLE */
+    public static boolean sample() {
+        return (ThreadLocalRandom.current().nextInt() & (SAMPLE - 1)) == 0;
+    }
+
+    /** a search thread starts */
+    public static void searchStarted() {
+        int n = searching.incrementAndGet();
+        peakSearching.accumulateAndGet(n, Math::max);
+    }
+
+    /** a search thread is done */
+    public static void searchEnded() {
+        searching.decrementAndGet();
+    }
+
+    /** a finished search iteration; prevNodes is the previous iteration's node count (0 if none) */
+    public static void iteration(int depth, int score, long iterationNodes, long prevNodes) {
+        double ebf = prevNodes > 0 ? (double) iterationNodes / prevNodes : 0;
+        if (prevNodes > 0) ebf100 = Math.round(ebf * 100);
+        IterationEvent e = new IterationEvent();
+        if (e.isEnabled()) {
+            e.depth = depth;
+            e.score = score;
+            e.nodes = iterationNodes;
+            e.branchingFactor = ebf;
+            e.commit();
+        }
+    }
+
+    @Name("game.SearchIteration")
+    @Label("Search Iteration")
+    @Category({"Chess", "Search"})
+    static class IterationEvent extends Event {
+        @Label("Depth") int depth;
+        @Label("Score") int score;
+        @Label("Nodes") long nodes;
+        @Label("Effective Branching Factor") double branchingFactor;
+    }
+
+    @Name("game.EngineMetrics")
+    @Label("Engine Metrics")
+    @Category({"Chess", "Search"})
+    @Period("1 s")
+    static class MetricsEvent extends Event {
+        @Label("Nodes") long nodes;
+        @Label("Quiescence Nodes") long qnodes;
+        @Label("TT Probes") long ttProbes;
+        @Label("TT Hits") long ttHits;
+        @Label("TT Cutoffs") long ttCutoffs;
+        @Label("Beta Cutoffs") long betaCutoffs;
+        @Label("First-Move Beta Cutoffs") long firstMoveCutoffs;
+        @Label("Moves Generated") long movesGenerated;
+        @Label("Moves Searched") long movesSearched;
+        @Label("Effective Branching Factor") double branchingFactor;
+        @Label("Move Generation Time") @Timespan long moveGenNanos;
+        @Label("In-Check Test Time") @Timespan long inCheckNanos;
+        @Label("Evaluation Time") @Timespan long evalNanos;
+    }
+
+    private static void emitPeriodic() {
+        MetricsEvent e = new MetricsEvent();
+        e.nodes = nodes.sum();
+        e.qnodes = qnodes.sum();
+        e.ttProbes = ttProbes.sum();
+        e.ttHits = ttHits.sum();
+        e.ttCutoffs = ttCutoffs.sum();
+        e.betaCutoffs = betaCutoffs.sum();
+        e.firstMoveCutoffs = firstMoveCutoffs.sum();
+        e.movesGenerated = movesGenerated.sum();
+        e.movesSearched = movesSearched.sum();
+        e.branchingFactor = ebf100 / 100.0;
+        e.moveGenNanos = moveGenNanos.sum();
+        e.inCheckNanos = inCheckNanos.sum();
+        e.evalNanos = evalNanos.sum();
+        e.commit();
+    }
+
+    private static final LongAdder[] ALL = {nodes, qnodes, ttProbes, ttHits, ttCutoffs, betaCutoffs,
+            firstMoveCutoffs, movesGenerated, movesSearched, moveGenNanos, inCheckNanos, evalNanos};
+
+    private static void printLoop(long intervalMs) {
+        long[] prev = new long[ALL.length];
+        long prevNs = System.nanoTime();
+        while (true) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long[] d = new long[ALL.length];
+            for (int i = 0; i < ALL.length; i++) {
+                long v = ALL[i].sum();
+                d[i] = v - prev[i];
+                prev[i] = v;
+            }
+            long now = System.nanoTime();
+            long wall = Math.max(1, now - prevNs);
+            prevNs = now;
+            // threads that searched in this interval: the peak, restarted from those still searching
+            int threads = Math.max(1, peakSearching.getAndSet(searching.get()));
+            // nothing searched in this interval
+            if (d[0] == 0 && d[1] == 0) continue;
+            System.err.println(summary(d, wall, threads));
+        }
+    }
+
+    private static String summary(long[] d, long wallNs, int threads) {
+        long all = d[0] + d[1];
+        long threadNs = wallNs * threads;
+        return String.format("metrics: %d nodes (%d%% qsearch) %d nps | tt hit %d%% cut %d%% | "
+                        + "first-move cutoffs %d%% | ebf %.2f | generated/searched %.2f | "
+                        + "movegen %d%% incheck %d%% eval %d%% of %d threads",
+                all, pct(d[1], all), all * 1_000_000_000L / wallNs,
+                pct(d[3], d[2]), pct(d[4], d[2]), pct(d[6], d[5]), ebf100 / 100.0,
+                d[8] == 0 ? 0.0 : (double) d[7] / d[8],
+                pct(d[9], threadNs), pct(d[10], threadNs), pct(d[11], threadNs), threads);
+    }
+
+    private static long pct(long part, long whole) {
+        return whole == 0 ? 0 : part * 100 / whole;
+    }
+}
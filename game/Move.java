@@ -2,6 +2,12 @@ package game;
 
 
 public class Move {
+    // packed int form used by the allocation-free generator:
+    // bits 0-5 from, 6-11 to, 12-15 moved, 16-19 captured, 20-23 promo, 24-26 flag
+    // (captured/promo hold Piece.EMPTY instead of -1). 0 is never a real move.
+    public static final int NONE = 0;
+    private static final Flag[] FLAGS = Flag.values();
+
     public int from;
     public int to;
     public int movedPiece;     
@@ -29,6 +35,28 @@ public class Move {
         this.flag = flag;
     }
 
+    public static int pack(int from, int to, int movedPiece, int capPiece, int promoPiece, int flag) {
+        return from | (to << 6) | (movedPiece << 12) | (Math.max(capPiece, 0) << 16)
+                | (Math.max(promoPiece, 0) << 20) | (flag << 24);
+    }
+
+    public static int from(int m)       { return m & 63; }
+    public static int to(int m)         { return (m >>> 6) & 63; }
+    public static int moved(int m)      { return (m >>> 12) & 15; }
+    public static int captured(int m)   { return (m >>> 16) & 15; }
+    public static int promo(int m)      { return (m >>> 20) & 15; }
+    public static int flag(int m)       { return (m >>> 24) & 7; }
+    public static Flag flagOf(int m)    { return FLAGS[flag(m)]; }
+
+    public int pack() {
+        return pack(from, to, movedPiece, capPiece, promoPiece, flag.ordinal());
+    }
+
+    public static Move unpack(int m) {
+        int cap = captured(m), promo = promo(m);
+        return new Move(from(m), to(m), moved(m), cap == 0 ? -1 : cap, promo == 0 ? -1 : promo, flagOf(m));
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
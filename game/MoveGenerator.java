@@ -5,346 +5,393 @@ import java.util.List;
 
 
 public class MoveGenerator {
+    // a position never has more than 218 pseudo-legal moves
+    public static final int MAX_MOVES = 256;
+
+    private static final int NL = Flag.NL.ordinal();
+    private static final int CAP = Flag.CAP.ordinal();
+    private static final int DPP = Flag.DPP.ordinal();
+    private static final int KC = Flag.KC.ordinal();
+    private static final int QC = Flag.QC.ordinal();
+    private static final int EN_PASSANT = Flag.EN_PASSANT.ordinal();
+    private static final int PROMO = Flag.PROMO.ordinal();
+
+    // what generateLegal writes: captures (with en passant and every promotion), quiets, or both
+    public static final int CAPTURES = 1;
+    public static final int QUIETS = 2;
+    public static final int ALL = CAPTURES | QUIETS;
+
     // Generate all possible moves for the current player
+    // (List adapter over generate(), allocates a Move per entry)
     public static List<Move> Moves(Board board , boolean whiteToMove){
-        List<Move> moves = new ArrayList<>();
-
-        for(int i = 0;i<64;i++){
-            Piece p = Piece.values()[board.squares[i]];
-            if(p == Piece.EMPTY){
-                continue;
-            }
-            boolean isWhitePiece = p.name().startsWith("W");
-            // checking which color to move
-            if(isWhitePiece != whiteToMove){
-                continue;
-            }
-            // Get piece-specific moves
-            moves.addAll(PieceMoves(board, p, i, isWhitePiece));
-
-        }
+        int[] buf = new int[MAX_MOVES];
+        int n = generate(board, whiteToMove, buf, 0);
+        List<Move> moves = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) moves.add(Move.unpack(buf[i]));
         return moves;
     }
-    // Generate piece specific moves
-    public static List<Move> PieceMoves(Board board, Piece p , int pos, boolean isWhite){
-        if(p == Piece.WP || p == Piece.BP){
-            return PawnMoves(board,p, pos, isWhite);
-        }else if(p == Piece.WK || p == Piece.BK){
-            return KingMoves(board,p, pos, isWhite);
-        }else if(p == Piece.WQ || p == Piece.BQ){
-            return QueenMoves(board, p, pos, isWhite);
-        }else if(p == Piece.WR || p == Piece.BR){
-            return RookMoves(board,p, pos, isWhite);
-        }else if(p == Piece.WB || p == Piece.BB){
-            return BishopMoves(board ,p, pos, isWhite);
-        }else{
-            return KnightMoves(board ,p, pos , isWhite);
+
+    /**
+     * Writes packed moves (see Move.pack) for the side 'whiteToMove' into buf starting at 'start'.
+     * returns the index one past the last move written; nothing is allocated.
+     */
+    public static int generate(Board board, boolean whiteToMove, int[] buf, int start) {
+        int n = start;
+        // walk each piece type's bitboard, so only occupied squares are visited
+        int off = whiteToMove ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+        int pawn = Piece.WP.ordinal() + off, knight = Piece.WN.ordinal() + off, bishop = Piece.WB.ordinal() + off;
+        int rook = Piece.WR.ordinal() + off, queen = Piece.WQ.ordinal() + off, king = Piece.WK.ordinal() + off;
+
+        for (long bb = board.pieceBB[pawn]; bb != 0; bb &= bb - 1) {
+            n = PawnMoves(board, pawn, Long.numberOfTrailingZeros(bb), whiteToMove, buf, n);
+        }
+        for (long bb = board.pieceBB[knight]; bb != 0; bb &= bb - 1) {
+            n = KnightMoves(board, knight, Long.numberOfTrailingZeros(bb), whiteToMove, buf, n);
+        }
+        for (long bb = board.pieceBB[bishop]; bb != 0; bb &= bb - 1) {
+            n = BishopMoves(board, bishop, Long.numberOfTrailingZeros(bb), whiteToMove, buf, n);
+        }
+        for (long bb = board.pieceBB[rook]; bb != 0; bb &= bb - 1) {
+            n = RookMoves(board, rook, Long.numberOfTrailingZeros(bb), whiteToMove, buf, n);
         }
+        for (long bb = board.pieceBB[queen]; bb != 0; bb &= bb - 1) {
+            n = QueenMoves(board, queen, Long.numberOfTrailingZeros(bb), whiteToMove, buf, n);
+        }
+        int kingSq = board.kingSq[whiteToMove ? 0 : 1];
+        if (kingSq != -1) n = KingMoves(board, king, kingSq, whiteToMove, buf, n);
+        return n;
     }
 
-    // Kings move
-    public static List<Move> KingMoves(Board board ,Piece p, int pos , boolean isWhite){
-        List<Move> moves = new ArrayList<>();
-
-        // direction where king can move,I collecting idx of board array where king can move in dir array...
-        int[] dir = {-9 , -8 , -7 , 1, 9 , 8, 7 , -1};
-
-        // curr row and col of king
-        int row = pos/8;
-        int col = pos % 8;
-
-        for(int x : dir){
-            int tar = pos + x;
-            int tarRow = tar / 8;
-            int tarCol = tar % 8;
-
-            if(tar < 0 || tar >= 64){
-                continue;
-            }
-            // this check the king doesn’t teleport horizontally across the board.
-            if(Math.abs(tarCol - col) > 1){
-                continue;
-            }
-
-
-            Piece tarPiece = Piece.values()[board.squares[tar]];
-
+    /** legal moves for the side to move (List adapter over generateLegal) */
+    public static List<Move> legalMoves(Board board) {
+        int[] buf = new int[MAX_MOVES];
+        int n = generateLegal(board, buf, 0);
+        List<Move> moves = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) moves.add(Move.unpack(buf[i]));
+        return moves;
+    }
 
-            if(tarPiece == Piece.EMPTY){
-                moves.add(new Move(pos, tar, p.ordinal(), -1, -1, Flag.NL));
-            }else{
-                // if NOt EMPTY then we check piece is diff color if color is diff then we can move our king...
+    /**
+     * Like generate(), but writes only legal moves for board.whiteToMove.
+     * Checkers and pinned pieces are worked out once up front, so no move
+     * needs a makeMove/undoMove pair to be tested.
+     */
+    public static int generateLegal(Board board, int[] buf, int start) {
+        return generateLegal(board, buf, start, ALL, -1L);
+    }
 
-                boolean tarIsWhite = tarPiece.name().startsWith("W");
+    /** legal captures, en passant and promotions (quiet ones too) */
+    public static int generateCaptures(Board board, int[] buf, int start) {
+        return generateLegal(board, buf, start, CAPTURES, -1L);
+    }
 
-                if(tarIsWhite != isWhite){
-                    moves.add(new Move(pos, tar, p.ordinal(), tarPiece.ordinal(), -1, Flag.CAP));
-                }
-            }
-        }
+    /** the legal moves generateCaptures leaves out, castling included */
+    public static int generateQuiets(Board board, int[] buf, int start) {
+        return generateLegal(board, buf, start, QUIETS, -1L);
+    }
 
-        // castling
-        if (!board.kingMoved(isWhite) && !board.isInCheck(isWhite)) {
-            // Kingside castle
-            if (!board.rookMoved(isWhite, true) && board.isEmptyBetween(pos, pos + 3)) {
-                if (!board.isUnderAttack(pos + 1, isWhite) && !board.isUnderAttack(pos + 2, isWhite)) {
-                    moves.add(new Move(pos, pos + 2, p.ordinal(), -1, -1, Flag.KC));
-                }
-            }
-            // Queenside castle
-            if (!board.rookMoved(isWhite, false) && board.isEmptyBetween(pos, pos - 4)) {
-                if (!board.isUnderAttack(pos - 1, isWhite) && !board.isUnderAttack(pos - 2, isWhite)) {
-                    moves.add(new Move(pos, pos - 2, p.ordinal(), -1, -1, Flag.QC));
-                }
-            }
+    /** is the packed move m legal here; only m's from-square is generated, into scratch */
+    public static boolean isLegal(Board board, int m, int[] scratch) {
+        int from = Move.from(m);
+        if (board.squares[from] != Move.moved(m)) return false;
+        int n = generateLegal(board, scratch, 0, ALL, 1L << from);
+        for (int i = 0; i < n; i++) {
+            if (scratch[i] == m) return true;
         }
-        return moves;
-
+        return false;
     }
-    // Queen Move
-    public static List<Move> QueenMoves(Board board ,Piece p, int pos , boolean isWhite){
-        List<Move> moves = new ArrayList<>();
 
-        // direction where Queen can move,I collecting idx of board array where king can move in dir array...
-        int dir[] = {-9 , -8 , -7 , 1, 9 , 8, 7 , -1};
+    /**
+     * Legal moves of the given kinds (CAPTURES, QUIETS or ALL) for pieces
+     * standing on fromMask, into buf from 'start'; returns the end index.
+     */
+    public static int generateLegal(Board board, int[] buf, int start, int kinds, long fromMask) {
+        if (!Metrics.ENABLED || !Metrics.sample()) return legal(board, buf, start, kinds, fromMask);
+        long t0 = System.nanoTime();
+        int n = legal(board, buf, start, kinds, fromMask);
+        Metrics.moveGenNanos.add((System.nanoTime() - t0) * Metrics.SAMPLE);
+        return n;
+    }
 
-        for(int x: dir){
-            int tar = pos;
-            while (true) { 
-                tar += x;
+    private static int legal(Board board, int[] buf, int start, int kinds, long fromMask) {
+        boolean white = board.whiteToMove;
+        int us = white ? 0 : 1, them = 1 - us;
+        int ksq = board.kingSq[us];
+        // no king (hand-edited position): nothing to protect, pseudo-legal is legal
+        if (ksq == -1) return filter(buf, start, generate(board, white, buf, start), kinds, fromMask);
+
+        long own = board.colorBB[us], enemy = board.colorBB[them], occ = board.occupied;
+        int off = white ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+        int n = start;
+        boolean captures = (kinds & CAPTURES) != 0, quiets = (kinds & QUIETS) != 0;
+        long kindMask = (captures ? enemy : 0L) | (quiets ? ~occ : 0L);
+        boolean kingFrom = (fromMask & (1L << ksq)) != 0;
+
+        // king steps: take the king off the board so it can't hide behind itself from a slider
+        long kingOcc = occ ^ (1L << ksq);
+        for (long bb = kingFrom ? Bitboards.KING[ksq] & ~own & kindMask : 0L; bb != 0; bb &= bb - 1) {
+            int to = Long.numberOfTrailingZeros(bb);
+            if ((board.attackersTo(to, kingOcc) & enemy) != 0) continue;
+            int cap = board.squares[to];
+            buf[n++] = Move.pack(ksq, to, Piece.WK.ordinal() + off, cap, 0, cap == Piece.EMPTY.ordinal() ? NL : CAP);
+        }
 
-                int tarRow = tar / 8;
-                int tarCol = tar % 8;
-                // early position on queen.
-                int posRow = pos / 8;
-                int posCol = pos % 8;
+        long checkers = board.attackersTo(ksq, occ) & enemy;
+        // double check: only the king can move
+        if ((checkers & (checkers - 1)) != 0) return n;
 
-                if(Math.abs(tarCol - posCol) > 1 && (x == -1 || x == 1)){
-                    break;
-                }
-                if(Math.abs(tarCol - posCol) != Math.abs(tarRow - posRow) && (x == -9 || x == 9 || x == -7 || x == 7)){
-                    break;
-                }
-                if (tar < 0 || tar >= 64){
-                    break;
-                }
+        // in check, other pieces must capture the checker or block it
+        long targetMask = ~own;
+        if (checkers != 0) {
+            targetMask = Bitboards.BETWEEN[ksq][Long.numberOfTrailingZeros(checkers)] | checkers;
+        } else if (quiets && kingFrom && !board.kingMoved(white)) {
+            n = castlingMoves(board, Piece.WK.ordinal() + off, ksq, white, buf, n);
+        }
+        long pinned = pinnedPieces(board, us, ksq);
+        // pieces use the kind mask directly, pawns sort their moves out below
+        long pieceTargets = targetMask & kindMask;
+
+        // knights: a pinned knight can never move
+        int knight = Piece.WN.ordinal() + off;
+        for (long bb = board.pieceBB[knight] & ~pinned & fromMask; bb != 0; bb &= bb - 1) {
+            int from = Long.numberOfTrailingZeros(bb);
+            n = addTargets(board, knight, from, Bitboards.KNIGHT[from] & pieceTargets, buf, n);
+        }
 
-                Piece tarPiece = Piece.values()[board.squares[tar]];
+        // sliders: a pinned one may still move along the pin line
+        int bishop = Piece.WB.ordinal() + off, rook = Piece.WR.ordinal() + off, queen = Piece.WQ.ordinal() + off;
+        for (long bb = board.pieceBB[bishop] & fromMask; bb != 0; bb &= bb - 1) {
+            int from = Long.numberOfTrailingZeros(bb);
+            long t = Bitboards.bishopAttacks(from, occ) & pieceTargets;
+            if ((pinned & (1L << from)) != 0) t &= Bitboards.LINE[ksq][from];
+            n = addTargets(board, bishop, from, t, buf, n);
+        }
+        for (long bb = board.pieceBB[rook] & fromMask; bb != 0; bb &= bb - 1) {
+            int from = Long.numberOfTrailingZeros(bb);
+            long t = Bitboards.rookAttacks(from, occ) & pieceTargets;
+            if ((pinned & (1L << from)) != 0) t &= Bitboards.LINE[ksq][from];
+            n = addTargets(board, rook, from, t, buf, n);
+        }
+        for (long bb = board.pieceBB[queen] & fromMask; bb != 0; bb &= bb - 1) {
+            int from = Long.numberOfTrailingZeros(bb);
+            long t = Bitboards.queenAttacks(from, occ) & pieceTargets;
+            if ((pinned & (1L << from)) != 0) t &= Bitboards.LINE[ksq][from];
+            n = addTargets(board, queen, from, t, buf, n);
+        }
 
-                if(tarPiece == Piece.EMPTY){
-                    moves.add(new Move(pos, tar, p.ordinal(), -1, -1, Flag.NL));
-                }else{
-                    boolean tarIsWhite =tarPiece.name().startsWith("W");
-                    if(tarIsWhite != isWhite){
-                        moves.add(new Move(pos, tar, p.ordinal(), tarPiece.ordinal(), -1, Flag.CAP));
+        // pawns: pushes to the last rank count as captures (promotions), the other pushes as quiets
+        int pawn = Piece.WP.ordinal() + off;
+        int dir = white ? -8 : 8;
+        int startRow = white ? 6 : 1, lastRow = white ? 0 : 7;
+        for (long bb = board.pieceBB[pawn] & fromMask; bb != 0; bb &= bb - 1) {
+            int from = Long.numberOfTrailingZeros(bb);
+            long allowed = targetMask;
+            if ((pinned & (1L << from)) != 0) allowed &= Bitboards.LINE[ksq][from];
+
+            int tar = from + dir;
+            if ((occ & (1L << tar)) == 0) {
+                if ((allowed & (1L << tar)) != 0) {
+                    if (tar / 8 == lastRow) {
+                        if (captures) n = addPromotions(pawn, from, tar, 0, white, buf, n);
+                    } else if (quiets) {
+                        buf[n++] = Move.pack(from, tar, pawn, 0, 0, NL);
                     }
-                    break;
                 }
-
-                if(x == -1 || x == 1){
-                    if(tarCol == 0 || x == 1){
-                        break;
-                    }
-                    if(tarCol == 7 || x == -1){
-                        break;
-                    }
+                int two = tar + dir;
+                if (quiets && from / 8 == startRow && (occ & (1L << two)) == 0 && (allowed & (1L << two)) != 0) {
+                    buf[n++] = Move.pack(from, two, pawn, 0, 0, DPP);
                 }
             }
+            if (!captures) continue;
+            for (long caps = Bitboards.PAWN[us][from] & enemy & allowed; caps != 0; caps &= caps - 1) {
+                int to = Long.numberOfTrailingZeros(caps);
+                if (to / 8 == lastRow) n = addPromotions(pawn, from, to, board.squares[to], white, buf, n);
+                else buf[n++] = Move.pack(from, to, pawn, board.squares[to], 0, CAP);
+            }
         }
-        return moves;
-    }
-
-    // Rook Moves
-    public static List<Move> RookMoves(Board board ,Piece p, int pos , boolean isWhite){
-        List<Move> moves = new ArrayList<>();
-
-        int dir[] = {-8 , 8 , -1 , 1};
-
-        for(int x : dir){
-            int tar = pos;
-            while (true) { 
-                tar += x;
-
-                int tarRow = tar / 8;
-                int tarCol = tar % 8;
-                int posRow = pos/8;
-                int posCol = pos % 8;
-
-                if(Math.abs(tarCol -posCol) > Math.abs(tar - pos) % 8){
-                    break;
-                }
-                if(tar < 0 || tar >= 64) break;
-
-                if (x == -1 || x == 1) {
-                    if(tarRow != posRow){
-                        break;
-                    }
-                }
 
-                Piece tarPiece = Piece.values()[board.squares[tar]];
-                
-                if(tarPiece == Piece.EMPTY){
-                    moves.add(new Move(pos, tar , p.ordinal() , -1, -1 , Flag.NL));
-                }else{
-                    boolean isWhitePiece = tarPiece.name().startsWith("W");
-
-                    if(isWhitePiece != isWhite){
-                        moves.add(new Move(pos, tar, p.ordinal(), tarPiece.ordinal(), -1, Flag.CAP));
-                        
-                    }
-                    break;
+        // en passant removes two pawns from one line, so it is tested on the resulting occupancy:
+        // that catches the horizontal discovered check the pin mask cannot see
+        int ep = board.enPassantSquare;
+        if (ep != -1 && captures) {
+            int capSq = white ? ep + 8 : ep - 8;
+            int theirPawn = white ? Piece.BP.ordinal() : Piece.WP.ordinal();
+            for (long bb = Bitboards.PAWN[them][ep] & board.pieceBB[pawn] & fromMask; bb != 0; bb &= bb - 1) {
+                int from = Long.numberOfTrailingZeros(bb);
+                long after = (occ ^ (1L << from) ^ (1L << capSq)) | (1L << ep);
+                if ((board.attackersTo(ksq, after) & enemy & ~(1L << capSq)) == 0) {
+                    buf[n++] = Move.pack(from, ep, pawn, theirPawn, 0, EN_PASSANT);
                 }
-                
             }
         }
-        return moves;
+        return n;
     }
 
-    // Bishop Moves
-    public static List<Move> BishopMoves(Board board ,Piece p, int pos , boolean isWhite){
-        List<Move> moves = new ArrayList<>();
-
-        int dir[] = {-9 , 9 , -7, 7};
-
-        for(int x: dir){
-            int tar = pos;
-            while(true){
-                tar +=  x;
-
-                int tarRow = tar /8;
-                int tarCol = tar %8 ;
-                int posRow = pos /8 ;
-                int posCol = pos % 8;
-
-                if(tar < 0 || tar >= 64){
-                    break;
-                }
-                // When we move col then col and row must change if diff in col and row change is not same thats mean bishop jumped over the edge...
-                if (Math.abs(tarCol - posCol) != Math.abs(tarRow - posRow)){
-                    break;
-                }
-
-                Piece tarPiece = Piece.values()[board.squares[tar]];
-
-                if(tarPiece == Piece.EMPTY){
-                    moves.add(new Move(pos, tar , p.ordinal() ,-1 , -1, Flag.NL));
-                }else{
-                    boolean isWhitePiece = tarPiece.name().startsWith("W");
+    // keep the moves in buf[start..end) that match kinds and fromMask, returns the new end
+    private static int filter(int[] buf, int start, int end, int kinds, long fromMask) {
+        int n = start;
+        for (int i = start; i < end; i++) {
+            int m = buf[i];
+            boolean capture = Move.captured(m) != Piece.EMPTY.ordinal() || Move.promo(m) != 0;
+            if ((kinds & (capture ? CAPTURES : QUIETS)) != 0 && (fromMask & (1L << Move.from(m))) != 0) buf[n++] = m;
+        }
+        return n;
+    }
 
-                    if(isWhitePiece != isWhite){
-                        moves.add(new Move(pos , tar , p.ordinal() , tarPiece.ordinal(), -1 , Flag.CAP));
-                    }
-                    break;
-                }
-            }
+    /** own pieces that are the only blocker between our king and an enemy slider */
+    private static long pinnedPieces(Board board, int us, int ksq) {
+        int off = us == 0 ? Piece.BP.ordinal() - Piece.WP.ordinal() : 0;
+        long queens = board.pieceBB[Piece.WQ.ordinal() + off];
+        long snipers = (Bitboards.rookAttacks(ksq, 0L) & (board.pieceBB[Piece.WR.ordinal() + off] | queens))
+                | (Bitboards.bishopAttacks(ksq, 0L) & (board.pieceBB[Piece.WB.ordinal() + off] | queens));
+        long pinned = 0L;
+        for (; snipers != 0; snipers &= snipers - 1) {
+            long between = Bitboards.BETWEEN[ksq][Long.numberOfTrailingZeros(snipers)] & board.occupied;
+            if (between != 0 && (between & (between - 1)) == 0) pinned |= between & board.colorBB[us];
         }
-        return moves;
+        return pinned;
     }
-    // Knight Moves
-    public static List<Move> KnightMoves(Board board ,Piece p, int pos , boolean isWhite){
-        List<Move> moves = new ArrayList<>();
 
-        int dir[] = {10, -10, -6 , 6, -15, 15, -17, 17};
+    // Generate piece specific moves (List adapter)
+    public static List<Move> PieceMoves(Board board, Piece p , int pos, boolean isWhite){
+        int[] buf = new int[MAX_MOVES];
+        int n = PieceMoves(board, p.ordinal(), pos, isWhite, buf, 0);
+        List<Move> moves = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) moves.add(Move.unpack(buf[i]));
+        return moves;
+    }
 
-        int posRow = pos/ 8;
-        int posCol = pos % 8;
+    public static int PieceMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n){
+        if(p == Piece.WP.ordinal() || p == Piece.BP.ordinal()){
+            return PawnMoves(board, p, pos, isWhite, buf, n);
+        }else if(p == Piece.WK.ordinal() || p == Piece.BK.ordinal()){
+            return KingMoves(board, p, pos, isWhite, buf, n);
+        }else if(p == Piece.WQ.ordinal() || p == Piece.BQ.ordinal()){
+            return QueenMoves(board, p, pos, isWhite, buf, n);
+        }else if(p == Piece.WR.ordinal() || p == Piece.BR.ordinal()){
+            return RookMoves(board, p, pos, isWhite, buf, n);
+        }else if(p == Piece.WB.ordinal() || p == Piece.BB.ordinal()){
+            return BishopMoves(board, p, pos, isWhite, buf, n);
+        }else{
+            return KnightMoves(board, p, pos, isWhite, buf, n);
+        }
+    }
 
-        
-        for(int x: dir){
-            int tar = pos + x;
+    // Kings move
+    public static int KingMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n){
+        // every adjacent square not holding one of our own pieces
+        long targets = Bitboards.KING[pos] & ~board.colorBB[isWhite ? 0 : 1];
+        n = addTargets(board, p, pos, targets, buf, n);
 
-            int tarRow = tar / 8;
-            int tarCol = tar % 8;
+        // castling
+        if (!board.kingMoved(isWhite) && !board.isInCheck(isWhite)) {
+            n = castlingMoves(board, p, pos, isWhite, buf, n);
+        }
+        return n;
+    }
 
-            if(tar < 0 || tar >= 64){
-                continue;
+    // castles for a king that is known not to be in check
+    private static int castlingMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n) {
+        // Kingside castle
+        if (!board.rookMoved(isWhite, true) && board.isEmptyBetween(pos, pos + 3)) {
+            if (!board.isUnderAttack(pos + 1, !isWhite) && !board.isUnderAttack(pos + 2, !isWhite)) {
+                buf[n++] = Move.pack(pos, pos + 2, p, 0, 0, KC);
             }
-            if (!((Math.abs(tarRow - posRow) == 2 && Math.abs(tarCol - posCol) == 1) ||
-            (Math.abs(tarRow - posRow) == 1 && Math.abs(tarCol - posCol) == 2))) {
-                continue;
-            }
-
-
-            Piece tarPiece = Piece.values()[board.squares[tar]];
-
-            if(tarPiece  == Piece.EMPTY){
-                moves.add(new Move(pos, tar , p.ordinal(), -1 , -1 , Flag.NL));
-            }else{
-                boolean isWhitePiece = tarPiece.name().startsWith("W");
-                if(isWhitePiece != isWhite){
-                    moves.add(new Move(pos , tar , p.ordinal(), tarPiece.ordinal(), -1 , Flag.CAP));
-                }
+        }
+        // Queenside castle
+        if (!board.rookMoved(isWhite, false) && board.isEmptyBetween(pos, pos - 4)) {
+            if (!board.isUnderAttack(pos - 1, !isWhite) && !board.isUnderAttack(pos - 2, !isWhite)) {
+                buf[n++] = Move.pack(pos, pos - 2, p, 0, 0, QC);
             }
-            
         }
-        return moves;
+        return n;
+    }
+    // Queen Move
+    public static int QueenMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n){
+        long targets = Bitboards.queenAttacks(pos, board.occupied) & ~board.colorBB[isWhite ? 0 : 1];
+        return addTargets(board, p, pos, targets, buf, n);
+    }
+
+    // Rook Moves
+    public static int RookMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n){
+        long targets = Bitboards.rookAttacks(pos, board.occupied) & ~board.colorBB[isWhite ? 0 : 1];
+        return addTargets(board, p, pos, targets, buf, n);
     }
 
-    // Pawn Moves 
+    // Bishop Moves
+    public static int BishopMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n){
+        long targets = Bitboards.bishopAttacks(pos, board.occupied) & ~board.colorBB[isWhite ? 0 : 1];
+        return addTargets(board, p, pos, targets, buf, n);
+    }
+    // Knight Moves
+    public static int KnightMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n){
+        long targets = Bitboards.KNIGHT[pos] & ~board.colorBB[isWhite ? 0 : 1];
+        return addTargets(board, p, pos, targets, buf, n);
+    }
 
-    public static List<Move> PawnMoves(Board board ,Piece p, int pos , boolean isWhite){
-        List<Move> moves = new ArrayList<>();
+    // Pawn Moves
 
+    public static int PawnMoves(Board board, int p, int pos, boolean isWhite, int[] buf, int n){
         int  dir = (isWhite) ? -8 : 8;
+        int us = isWhite ? 0 : 1;
 
         int posRow = pos/8;
-        int posCol = pos%8;
-        // one step forword
+        // one step forword (a pawn is never on its last rank, so tar is on the board)
         int tar = pos + dir;
-        if(tar >= 0 && tar < 64 && Piece.values()[board.squares[tar]] == Piece.EMPTY){
-            
+        if((board.occupied & (1L << tar)) == 0){
+
             if ((isWhite && tar / 8 == 0) || (!isWhite && tar / 8 == 7)) {
                 // Promotion
-                for (Piece promo : new Piece[]{isWhite ? Piece.WQ : Piece.BQ, isWhite ? Piece.WR : Piece.BR,
-                        isWhite ? Piece.WB : Piece.BB, isWhite ? Piece.WN : Piece.BN}) {
-                    moves.add(new Move(pos, tar, p.ordinal(), -1, promo.ordinal(), Flag.PROMO));
-                }
+                n = addPromotions(p, pos, tar, 0, isWhite, buf, n);
             } else {
-                moves.add(new Move(pos, tar, p.ordinal(), -1, -1, Flag.NL));
+                buf[n++] = Move.pack(pos, tar, p, 0, 0, NL);
             }
 
-            // 2 steps 
+            // 2 steps
             boolean stRow = (isWhite && posRow == 6) || (!isWhite && posRow == 1);
             int twoStTar = pos + 2*dir;
-            if(stRow && Piece.values()[board.squares[twoStTar]] == Piece.EMPTY){
-                moves.add(new Move(pos , twoStTar , p.ordinal(), -1 , -1 , Flag.DPP));
+            if(stRow && (board.occupied & (1L << twoStTar)) == 0){
+                buf[n++] = Move.pack(pos, twoStTar, p, 0, 0, DPP);
             }
         }
         // capturn dia opposite side pown
-        int cap[] = {dir -1 , dir +1};
-        for(int x: cap){
-            int target = pos + x;
-
-            if(target < 0 || target >=64){
-                continue;
-            }
-
-            int tarRow = target/8;
-            int tarCol = target % 8;
-
-            if(Math.abs(tarCol - posCol) != 1){
-                continue;
+        long caps = Bitboards.PAWN[us][pos] & board.colorBB[1 - us];
+        while (caps != 0) {
+            int target = Long.numberOfTrailingZeros(caps);
+            caps &= caps - 1;
+            int capPiece = board.squares[target];
+            if ((isWhite && target / 8 == 0) || (!isWhite && target / 8 == 7)) {
+                // Promotion capture
+                n = addPromotions(p, pos, target, capPiece, isWhite, buf, n);
+            } else {
+                buf[n++] = Move.pack(pos, target, p, capPiece, 0, CAP);
             }
+        }
+        int ep = board.enPassantSquare;
+        if (ep != -1 && (Bitboards.PAWN[us][pos] & (1L << ep)) != 0) {
+            buf[n++] = Move.pack(pos, ep, p, isWhite ? Piece.BP.ordinal() : Piece.WP.ordinal(), 0, EN_PASSANT);
+        }
+        return n;
+    }
 
-            Piece tarPiece = Piece.values()[board.squares[target]];
-            if(tarPiece != Piece.EMPTY){
-                boolean isWhitePiece = tarPiece.name().startsWith("W");
-                if(isWhitePiece != isWhite){
-                    if ((isWhite && target / 8 == 0) || (!isWhite && target / 8 == 7)) {
-                        // Promotion capture
-                        for (Piece promo : new Piece[]{isWhite ? Piece.WQ : Piece.BQ, isWhite ? Piece.WR : Piece.BR,
-                                isWhite ? Piece.WB : Piece.BB, isWhite ? Piece.WN : Piece.BN}) {
-                                    moves.add(new Move(pos, target, p.ordinal(), tarPiece.ordinal(), promo.ordinal(), Flag.PROMO));
-                        }
-                    } else {
-                        moves.add(new Move(pos, target, p.ordinal(), tarPiece.ordinal(), -1, Flag.CAP));
-                    }
-                }
-            }else if(target == board.enPassantSquare){
-                moves.add(new Move(pos, target, p.ordinal(), (isWhite ? Piece.BP.ordinal() : Piece.WP.ordinal()), -1, Flag.EN_PASSANT));
-            }
+    // one move per target square, capture if the square is occupied
+    private static int addTargets(Board board, int p, int pos, long targets, int[] buf, int n) {
+        while (targets != 0) {
+            int tar = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            int tarPiece = board.squares[tar];
+            buf[n++] = Move.pack(pos, tar, p, tarPiece, 0, tarPiece == Piece.EMPTY.ordinal() ? NL : CAP);
         }
-        return moves;
+        return n;
+    }
+
+    private static int addPromotions(int p, int pos, int tar, int capPiece, boolean isWhite, int[] buf, int n) {
+        int off = isWhite ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+        buf[n++] = Move.pack(pos, tar, p, capPiece, Piece.WQ.ordinal() + off, PROMO);
+        buf[n++] = Move.pack(pos, tar, p, capPiece, Piece.WR.ordinal() + off, PROMO);
+        buf[n++] = Move.pack(pos, tar, p, capPiece, Piece.WB.ordinal() + off, PROMO);
+        buf[n++] = Move.pack(pos, tar, p, capPiece, Piece.WN.ordinal() + off, PROMO);
+        return n;
     }
 
 }
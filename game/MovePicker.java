@@ -0,0 +1,149 @@
+package game;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+
+/**
+ * Staged legal move iterator for one search node: the hash move, then
+ * captures and promotions by MVV-LVA, then the killers, then the remaining
+ * quiets by history. Each stage is generated only when the one before it is
+ * used up, so a node that cuts off on the hash move or a capture never
+ * generates its quiet moves.
+ *
+ * One picker per ply is reused through init(); nothing is allocated per node.
+ */
+public class MovePicker implements PrimitiveIterator.OfInt {
+    private static final int HASH = 0, GEN_CAPTURES = 1, CAPTURES = 2, KILLERS = 3,
+            GEN_QUIETS = 4, QUIETS = 5, DONE = 6;
+
+    // victim value for MVV-LVA by piece ordinal, the king is never captured
+    private static final int[] VALUE = {0, 1, 3, 3, 5, 9, 20, 1, 3, 3, 5, 9, 20};
+
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private final int[] scores = new int[MoveGenerator.MAX_MOVES];
+    private final int[] scratch = new int[MoveGenerator.MAX_MOVES];
+
+    private Board board;
+    private int ttMove;
+    private int killer0, killer1;
+    private int[][] history;
+
+    private int stage;
+    private boolean capturesOnly;
+    private int index, end;
+    private int next = Move.NONE;
+
+    /** start a new node: ttMove and the killers may be NONE, history may be null */
+    public MovePicker init(Board board, int ttMove, int killer0, int killer1, int[][] history) {
+        this.board = board;
+        this.ttMove = ttMove;
+        this.killer0 = killer0;
+        this.killer1 = killer1;
+        this.history = history;
+        capturesOnly = false;
+        stage = HASH;
+        index = end = 0;
+        next = Move.NONE;
+        return this;
+    }
+
+    /** start a quiescence node: captures and promotions only, by MVV-LVA */
+    public MovePicker initCaptures(Board board) {
+        init(board, Move.NONE, Move.NONE, Move.NONE, null);
+        capturesOnly = true;
+        stage = GEN_CAPTURES;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == Move.NONE) next = pick();
+        return next != Move.NONE;
+    }
+
+    @Override
+    public int nextInt() {
+        if (!hasNext()) throw new NoSuchElementException();
+        int m = next;
+        next = Move.NONE;
+        return m;
+    }
+
+    private int pick() {
+        while (true) {
+            switch (stage) {
+                case HASH:
+                    stage = GEN_CAPTURES;
+                    if (ttMove != Move.NONE && MoveGenerator.isLegal(board, ttMove, scratch)) return ttMove;
+                    break;
+                case GEN_CAPTURES:
+                    end = MoveGenerator.generateCaptures(board, moves, 0);
+                    if (Metrics.ENABLED) Metrics.movesGenerated.add(end);
+                    for (int i = 0; i < end; i++) {
+                        int m = moves[i];
+                        // most valuable victim first, least valuable attacker breaking ties
+                        scores[i] = (VALUE[Move.captured(m)] + VALUE[Move.promo(m)]) * 32 - VALUE[Move.moved(m)];
+                    }
+                    index = 0;
+                    stage = CAPTURES;
+                    break;
+                case CAPTURES:
+                    while (index < end) {
+                        int m = selectBest();
+                        if (m != ttMove) return m;
+                    }
+                    if (capturesOnly) {
+                        stage = DONE;
+                        break;
+                    }
+                    stage = KILLERS;
+                    index = 0;
+                    break;
+                case KILLERS:
+                    // killers come from sibling nodes, so check they are legal quiets here
+                    while (index < 2) {
+                        int k = index++ == 0 ? killer0 : killer1;
+                        if (k != Move.NONE && k != ttMove && Move.captured(k) == Piece.EMPTY.ordinal()
+                                && Move.promo(k) == 0 && MoveGenerator.isLegal(board, k, scratch)) {
+                            return k;
+                        }
+                    }
+                    stage = GEN_QUIETS;
+                    break;
+                case GEN_QUIETS:
+                    end = MoveGenerator.generateQuiets(board, moves, 0);
+                    if (Metrics.ENABLED) Metrics.movesGenerated.add(end);
+                    for (int i = 0; i < end; i++) {
+                        int m = moves[i];
+                        scores[i] = history == null ? 0 : history[Move.moved(m)][Move.to(m)];
+                    }
+                    index = 0;
+                    stage = QUIETS;
+                    break;
+                case QUIETS:
+                    while (index < end) {
+                        int m = selectBest();
+                        if (m != ttMove && m != killer0 && m != killer1) return m;
+                    }
+                    stage = DONE;
+                    break;
+                default:
+                    return Move.NONE;
+            }
+        }
+    }
+
+    // one selection-sort step: usually only the first few moves are ever asked for
+    private int selectBest() {
+        int best = index;
+        for (int i = index + 1; i < end; i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+        int m = moves[best];
+        moves[best] = moves[index];
+        scores[best] = scores[index];
+        index++;
+        return m;
+    }
+}
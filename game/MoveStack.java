@@ -0,0 +1,31 @@
+package game;
+
+
+/**
+ * Preallocated move storage for recursive searches: ply p owns the slice
+ * moves[start(p) .. end(p)). Filling a ply reuses the same array every time,
+ * so a whole perft or search run generates moves without allocating.
+ */
+public class MoveStack {
+    public final int[] moves;
+    private final int[] bounds;
+
+    public MoveStack(int maxPly) {
+        moves = new int[(maxPly + 1) * MoveGenerator.MAX_MOVES];
+        bounds = new int[maxPly + 2];
+    }
+
+    /** generate the side to move's legal moves for 'ply', returns the end index */
+    public int fill(Board board, int ply) {
+        bounds[ply + 1] = MoveGenerator.generateLegal(board, moves, bounds[ply]);
+        return bounds[ply + 1];
+    }
+
+    public int start(int ply) {
+        return bounds[ply];
+    }
+
+    public int end(int ply) {
+        return bounds[ply + 1];
+    }
+}
@@ -0,0 +1,101 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Perft split across a ForkJoinPool. The first 'splitPlies' plies fork one task
+ * per legal move, each on its own Board copy; below that every task runs the
+ * ordinary serial perft on its copy, so no Board is ever shared between threads.
+ */
+public class ParallelPerft {
+    public static final int DEFAULT_SPLIT_PLIES = 2;
+
+    private final ForkJoinPool pool;
+    private final int splitPlies;
+    private final PerftCache cache;
+
+    public ParallelPerft(ForkJoinPool pool, int splitPlies) {
+        this(pool, splitPlies, null);
+    }
+
+    /** cache may be null; when given, all workers share it */
+    public ParallelPerft(ForkJoinPool pool, int splitPlies, PerftCache cache) {
+        this.pool = pool;
+        this.splitPlies = Math.max(1, splitPlies);
+        this.cache = cache;
+    }
+
+    public long perft(Board board, int depth) {
+        if (depth <= 1) return Engine.perft(new Board(board), depth, new MoveStack(depth), 0);
+        return pool.invoke(new PerftTask(new Board(board), depth, splitPlies, cache));
+    }
+
+    private static class PerftTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final Board board;
+        private final int depth;
+        private final int splitLeft;
+        private final PerftCache cache;
+
+        PerftTask(Board board, int depth, int splitLeft, PerftCache cache) {
+            this.board = board;
+            this.depth = depth;
+            this.splitLeft = splitLeft;
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long compute() {
+            if (splitLeft == 0 || depth <= 2) {
+                return Engine.perft(board, depth, new MoveStack(depth), 0, cache);
+            }
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int n = MoveGenerator.generateLegal(board, moves, 0);
+            List<PerftTask> tasks = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                board.makeMove(moves[i]);
+                tasks.add(new PerftTask(new Board(board), depth - 1, splitLeft - 1, cache));
+                board.undoMove();
+            }
+            long nodes = 0;
+            for (PerftTask t : invokeAll(tasks)) nodes += t.join();
+            return nodes;
+        }
+    }
+
+    /** usage: ParallelPerft [depth] [splitPlies] [threads] [cacheMb] — compares with the serial perft */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int split = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SPLIT_PLIES;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        PerftCache cache = args.length > 3 ? new PerftCache(Integer.parseInt(args[3])) : null;
+
+        Board board = new Board();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ParallelPerft pp = new ParallelPerft(pool, split, cache);
+        // warm up both paths so the JIT doesn't flatter whichever runs second
+        for (int i = 0; i < 3; i++) {
+            Engine.perft(board, Math.min(depth, 4), new MoveStack(depth), 0);
+            pp.perft(board, Math.min(depth, 4));
+        }
+
+        long t0 = System.nanoTime();
+        long serial = Engine.perft(board, depth, new MoveStack(depth), 0);
+        long serialNs = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        long parallel = pp.perft(board, depth);
+        long parallelNs = System.nanoTime() - t0;
+        pool.shutdown();
+
+        System.out.println("Depth " + depth + " serial   = " + serial + " in " + serialNs / 1_000_000 + "ms");
+        System.out.println("Depth " + depth + " parallel = " + parallel + " in " + parallelNs / 1_000_000 + "ms"
+                + " (" + threads + " threads, split " + split + " plies)");
+        System.out.printf("Speedup: %.2fx%s%n", (double) serialNs / parallelNs, serial == parallel ? "" : "  MISMATCH");
+        if (cache != null) System.out.println(cache.stats());
+    }
+}
@@ -0,0 +1,58 @@
+package game;
+
+import java.util.Arrays;
+
+
+/**
+ * Cache of the pawn-structure terms (see Evaluation.pawnTerms) keyed by
+ * Board.pawnKey. Pawn structures repeat across most of a search tree, so
+ * nearly every lookup is a hit and the full pawn evaluation runs rarely.
+ *
+ * Not thread safe: each Search owns one, just like its killers and history,
+ * and Engine.evaluate keeps one per thread.
+ */
+public class PawnTable {
+    public static final int DEFAULT_ENTRIES = 1 << 13;
+
+    private final long[] keys;
+    private final boolean[] used;
+    // PAWN_TERMS ints per entry
+    final int[] terms;
+    private final int mask;
+
+    public long hits, misses;
+
+    /** entries is rounded down to a power of two */
+    public PawnTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        keys = new long[size];
+        used = new boolean[size];
+        terms = new int[size * Evaluation.PAWN_TERMS];
+        mask = size - 1;
+    }
+
+    public PawnTable() {
+        this(DEFAULT_ENTRIES);
+    }
+
+    /** offset into terms[] of the board's pawn terms, computed and stored on a miss */
+    public int probe(Board board) {
+        long key = board.pawnKey;
+        int slot = (int) key & mask;
+        int at = slot * Evaluation.PAWN_TERMS;
+        if (used[slot] && keys[slot] == key) {
+            hits++;
+            return at;
+        }
+        misses++;
+        Evaluation.pawnTerms(board, terms, at);
+        keys[slot] = key;
+        used[slot] = true;
+        return at;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        hits = misses = 0;
+    }
+}
@@ -0,0 +1,77 @@
+package game;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Node counts of already-counted subtrees, keyed by zobrist key + remaining depth.
+ *
+ * Two-entry buckets: slot 0 keeps the deepest subtree seen (depth-preferred),
+ * slot 1 always takes the newest. Entries are (check ^ data, data) pairs like
+ * the TranspositionTable, so concurrent perft workers share it without locks.
+ * data = node count in the low 56 bits, depth in the top 8.
+ */
+public class PerftCache {
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long[] DEPTH_KEYS = new long[64];
+
+    static {
+        java.util.Random rnd = new java.util.Random(0x7E4F7CAC4EL);
+        for (int i = 0; i < DEPTH_KEYS.length; i++) DEPTH_KEYS[i] = rnd.nextLong();
+    }
+
+    private final long[] table;
+    private final long bucketMask;
+
+    public final LongAdder hits = new LongAdder();
+    public final LongAdder misses = new LongAdder();
+    public final LongAdder stores = new LongAdder();
+
+    /** size is rounded down to a power of two number of 32-byte buckets */
+    public PerftCache(int megabytes) {
+        long buckets = Long.highestOneBit(Math.max(1, megabytes) * 1024L * 1024L / 32);
+        // a Java array holds at most 2^31 longs
+        buckets = Math.min(buckets, 1L << 29);
+        bucketMask = buckets - 1;
+        table = new long[(int) (buckets * 4)];
+    }
+
+    /** node count for (key, depth), or -1 if not cached */
+    public long probe(long key, int depth) {
+        long check = key ^ DEPTH_KEYS[depth];
+        int base = (int) (check & bucketMask) * 4;
+        for (int i = base; i < base + 4; i += 2) {
+            long data = (long) LONGS.getOpaque(table, i + 1);
+            if (((long) LONGS.getOpaque(table, i) ^ data) == check && data != 0) {
+                hits.increment();
+                return data & 0x00FFFFFFFFFFFFFFL;
+            }
+        }
+        misses.increment();
+        return -1;
+    }
+
+    public void store(long key, int depth, long nodes) {
+        long check = key ^ DEPTH_KEYS[depth];
+        int base = (int) (check & bucketMask) * 4;
+        long data = nodes | ((long) depth << 56);
+        long old = (long) LONGS.getOpaque(table, base + 1);
+        // depth-preferred slot unless what is there is deeper
+        int slot = (old >>> 56) <= depth ? base : base + 2;
+        LONGS.setOpaque(table, slot, check ^ data);
+        LONGS.setOpaque(table, slot + 1, data);
+        stores.increment();
+    }
+
+    public long sizeBytes() {
+        return table.length * 8L;
+    }
+
+    public String stats() {
+        long h = hits.sum(), m = misses.sum();
+        return String.format("perft cache %dMB: %d hits, %d misses (%.1f%% hit rate), %d stores",
+                sizeBytes() >> 20, h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m), stores.sum());
+    }
+}
@@ -0,0 +1,140 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Runs an EPD perft suite, one position per line in the usual format:
+ *
+ *   r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - ;D1 48 ;D2 2039 ;D3 97862
+ *
+ * Lines are read one at a time and handed to a fixed pool whose queue is
+ * bounded; when it is full the reader runs the position itself, so memory
+ * stays flat however long the file is. Each position reports its time and
+ * nodes/sec as it finishes (not in file order), mismatches are listed with
+ * the depth that failed, and the exit code is 1 if any failed.
+ *
+ *   java -cp chess-engine.jar game.PerftSuite perftsuite.epd [threads] [maxDepth] [cacheMb]
+ */
+public class PerftSuite {
+    private final int maxDepth;
+    private final PerftCache cache;
+
+    private final LongAdder nodes = new LongAdder();
+    private final AtomicInteger positions = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /** maxDepth 0 runs every depth the file lists; cache may be null */
+    public PerftSuite(int maxDepth, PerftCache cache) {
+        this.maxDepth = maxDepth;
+        this.cache = cache;
+    }
+
+    /** stream the file through 'threads' workers, returns the number of failed positions */
+    public int run(String file, int threads) throws IOException, InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        long t0 = System.nanoTime();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                String epd = line.trim();
+                if (epd.isEmpty() || epd.startsWith("#")) continue;
+                int n = lineNo;
+                pool.execute(() -> check(n, epd));
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+        long ms = Math.max(1, (System.nanoTime() - t0) / 1_000_000);
+
+        System.out.println(positions.get() + " positions, " + failures.get() + " failed, "
+                + nodes.sum() + " nodes in " + ms + "ms, " + nodes.sum() * 1000 / ms + " nps ("
+                + threads + " threads)");
+        if (cache != null) System.out.println(cache.stats());
+        return failures.get();
+    }
+
+    // one EPD line; a bad FEN, or anything thrown while counting, fails that line
+    // and not the worker, which would otherwise drop it without a word
+    private void check(int lineNo, String epd) {
+        positions.incrementAndGet();
+        try {
+            verify(lineNo, epd);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            report("FAIL line " + lineNo + ": " + e + " " + epd);
+        }
+    }
+
+    // FEN, then ";D<depth> <nodes>" entries
+    private void verify(int lineNo, String epd) {
+        String[] parts = epd.split(";");
+        Board board = Board.fromFen(parts[0]);
+
+        long t0 = System.nanoTime();
+        long total = 0;
+        StringBuilder errors = new StringBuilder();
+        for (int i = 1; i < parts.length; i++) {
+            String[] d = parts[i].trim().split("\\s+");
+            if (d.length < 2 || !d[0].startsWith("D")) continue;
+            int depth;
+            long expected;
+            try {
+                depth = Integer.parseInt(d[0].substring(1));
+                expected = Long.parseLong(d[1]);
+            } catch (NumberFormatException e) {
+                errors.append(" bad entry '").append(parts[i].trim()).append('\'');
+                continue;
+            }
+            if (maxDepth > 0 && depth > maxDepth) continue;
+
+            long got = Engine.perft(board, depth, new MoveStack(depth), 0, cache);
+            total += got;
+            if (got != expected) {
+                errors.append(" D").append(depth).append(" got ").append(got).append(" expected ").append(expected);
+            }
+        }
+        long ns = System.nanoTime() - t0;
+        nodes.add(total);
+
+        long ms = ns / 1_000_000;
+        // in double: total * 1e9 overflows a long past about 9.2e9 nodes (deep kiwipete lines)
+        String stats = total + " nodes " + ms + "ms " + (long) (total * 1e9 / Math.max(1, ns)) + " nps";
+        if (errors.length() > 0) {
+            failures.incrementAndGet();
+            report("FAIL line " + lineNo + ":" + errors + " (" + stats + ") " + parts[0].trim());
+        } else {
+            report("ok   line " + lineNo + ": " + stats);
+        }
+    }
+
+    private static synchronized void report(String s) {
+        System.out.println(s);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("usage: PerftSuite <file.epd> [threads] [maxDepth] [cacheMb]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxDepth = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        PerftCache cache = args.length > 3 ? new PerftCache(Integer.parseInt(args[3])) : null;
+
+        int failed = new PerftSuite(maxDepth, cache).run(args[0], threads);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
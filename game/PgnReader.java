@@ -0,0 +1,317 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Streams PGN from a channel and replays every game: each SAN move is
+ * matched against the legal moves (see San) and made on a Board.
+ *
+ * The reader thread fills one fixed buffer from the channel, splits the
+ * bytes into games (a game ends where a tag line follows movetext) and hands
+ * them over in batches to a worker pool whose queue is bounded; when it is
+ * full the reader replays the batch itself. Memory therefore stays at a few
+ * batches however large the file is.
+ *
+ * Comments, variations, NAGs and move numbers are skipped; a game with a FEN
+ * tag starts from that position. The splitter steps over comments too, so a
+ * wrapped comment line starting with '[' does not end the game. A game whose
+ * move cannot be read, that has tags but no movetext, or whose PlyCount tag
+ * disagrees with the plies replayed is counted as an error.
+ *
+ *   java -cp chess-engine.jar game.PgnReader games.pgn|- [threads]
+ */
+public class PgnReader {
+    private static final int READ_BUFFER = 1 << 20;
+    // a batch is handed over once it holds this much
+    private static final int BATCH_BYTES = 256 * 1024;
+    // longer games are skipped, so one broken file cannot take the heap
+    private static final int MAX_GAME_BYTES = 4 << 20;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    /** called on a worker thread after every replayed move; must be thread-safe */
+    public interface MoveVisitor {
+        void visit(Board board, int move);
+    }
+
+    private final MoveVisitor visitor;
+    public final LongAdder games = new LongAdder();
+    public final LongAdder positions = new LongAdder();
+    public final LongAdder errors = new LongAdder();
+    public final LongAdder bytes = new LongAdder();
+    private final AtomicInteger reported = new AtomicInteger();
+
+    /** visitor may be null */
+    public PgnReader(MoveVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    // games back to back in one byte array; game i is data[ends[i - 1], ends[i])
+    private static class Batch {
+        byte[] data = new byte[BATCH_BYTES + 4096];
+        int length;
+        int[] ends = new int[64];
+        int games;
+        // number of the first game, for error messages
+        long first;
+
+        void append(byte b) {
+            if (length == data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[length++] = b;
+        }
+
+        void endGame() {
+            if (games == ends.length) ends = Arrays.copyOf(ends, games * 2);
+            ends[games++] = length;
+        }
+    }
+
+    /** replay every game in the channel on 'threads' workers */
+    public void run(ReadableByteChannel in, int threads) throws IOException, InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER);
+            byte[] a = buf.array();
+            Batch batch = new Batch();
+            long gameNo = 0;
+            int gameStart = 0;
+            boolean lineStart = true, movetext = false, skipping = false;
+            // inside a {comment}, a ;comment or %escape line, or a tag line (whose quoted
+            // values may hold braces): a '[' there does not start a game
+            boolean brace = false, lineComment = false, tagLine = false;
+
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                bytes.add(n);
+                for (int i = 0; i < n; i++) {
+                    byte b = a[i];
+                    if (brace) {
+                        brace = b != '}';
+                    } else if (lineComment || tagLine) {
+                        if (b == '\n') lineComment = tagLine = false;
+                    } else if (lineStart && b == '[' && movetext) {
+                        // a tag after movetext: the game before it is complete
+                        // a skipped game stays as an empty one, to keep the numbering
+                        batch.endGame();
+                        gameNo++;
+                        skipping = movetext = false;
+                        if (batch.length >= BATCH_BYTES) {
+                            submit(pool, batch);
+                            batch = new Batch();
+                            batch.first = gameNo;
+                        }
+                        gameStart = batch.length;
+                        tagLine = true;
+                    } else if (lineStart && b == '[') {
+                        tagLine = true;
+                    } else if (lineStart && b == '%') {
+                        lineComment = true;
+                    } else {
+                        if (lineStart && b != '\n' && b != '\r' && b != ' ' && b != '\t') movetext = true;
+                        if (b == '{') brace = true;
+                        else if (b == ';') lineComment = true;
+                    }
+                    lineStart = b == '\n';
+                    if (skipping) continue;
+                    batch.append(b);
+                    if (batch.length - gameStart > MAX_GAME_BYTES) {
+                        error(gameNo, "longer than " + MAX_GAME_BYTES + " bytes, skipped");
+                        batch.length = gameStart;
+                        skipping = true;
+                    }
+                }
+                buf.clear();
+            }
+            if (batch.length > gameStart || skipping) batch.endGame();
+            if (batch.games > 0) submit(pool, batch);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+    }
+
+    private void submit(ThreadPoolExecutor pool, Batch batch) {
+        pool.execute(() -> {
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int start = 0;
+            for (int g = 0; g < batch.games; g++) {
+                replay(batch.data, start, batch.ends[g], batch.first + g, moves);
+                start = batch.ends[g];
+            }
+        });
+    }
+
+    // one game: tag pairs, then movetext
+    private void replay(byte[] s, int i, int end, long gameNo, int[] moves) {
+        String fen = null;
+        int plyCount = -1;
+        boolean tags = false;
+        // tag pairs, only FEN (and PlyCount, as a check) matter for replaying
+        while (true) {
+            while (i < end && isSpace(s[i])) i++;
+            int lineEnd = i;
+            while (lineEnd < end && s[lineEnd] != '\n') lineEnd++;
+            // escape lines may come before the tags too
+            if (i < end && s[i] == '%' && (i == 0 || s[i - 1] == '\n')) {
+                i = lineEnd;
+                continue;
+            }
+            if (i >= end || s[i] != '[') break;
+            tags = true;
+            boolean isFen = startsWith(s, i + 1, lineEnd, "FEN "), isPlyCount = startsWith(s, i + 1, lineEnd, "PlyCount ");
+            if (isFen || isPlyCount) {
+                int q0 = indexOf(s, i, lineEnd, (byte) '"');
+                int q1 = q0 < 0 ? -1 : indexOf(s, q0 + 1, lineEnd, (byte) '"');
+                if (q1 > q0) {
+                    String value = new String(s, q0 + 1, q1 - q0 - 1, StandardCharsets.ISO_8859_1);
+                    if (isFen) fen = value;
+                    else plyCount = parseCount(value);
+                }
+            }
+            i = lineEnd;
+        }
+        if (i >= end) {
+            // tags without movetext (not even a result) mean the splitter lost the game's moves
+            if (tags) error(gameNo, "tags without movetext");
+            // nothing at all: an empty file, or a skipped game keeping its number
+            return;
+        }
+
+        Board board;
+        try {
+            board = fen == null ? new Board() : Board.fromFen(fen);
+        } catch (IllegalArgumentException e) {
+            error(gameNo, e.getMessage());
+            return;
+        }
+        games.increment();
+
+        int plies = 0;
+        int depth = 0;
+        boolean failed = false;
+        while (i < end) {
+            byte c = s[i];
+            if (isSpace(c)) {
+                i++;
+            } else if (c == '{') {
+                while (i < end && s[i] != '}') i++;
+                i++;
+            } else if (c == ';' || (c == '%' && (i == 0 || s[i - 1] == '\n'))) {
+                while (i < end && s[i] != '\n') i++;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else {
+                int t = i;
+                while (i < end && !isSpace(s[i]) && s[i] != '{' && s[i] != '(' && s[i] != ')' && s[i] != ';') i++;
+                // variations are skipped, only the main line is replayed
+                if (depth > 0) continue;
+                if (isResult(s, t, i)) break;
+                // move number: 12. or 12... (possibly glued to the move)
+                int k = t;
+                while (k < i && s[k] >= '0' && s[k] <= '9') k++;
+                if (k > t && k < i && s[k] == '.') {
+                    while (k < i && s[k] == '.') k++;
+                    t = k;
+                } else if (k == i) {
+                    continue;
+                }
+                while (t < i && s[t] == '.') t++;
+                // NAGs, annotation glyphs standing alone, "e.p."
+                if (t == i || s[t] == '$' || s[t] == '!' || s[t] == '?' || startsWith(s, t, i, "e.p.")) continue;
+
+                int m = San.parse(board, s, t, i, moves);
+                if (m == Move.NONE) {
+                    error(gameNo, "cannot play '" + new String(s, t, i - t, StandardCharsets.ISO_8859_1)
+                            + "' after " + plies + " plies in " + board.toFen());
+                    failed = true;
+                    break;
+                }
+                board.makeMove(m);
+                plies++;
+                if (visitor != null) visitor.visit(board, m);
+            }
+        }
+        positions.add(plies);
+        if (plyCount >= 0 && plyCount != plies && !failed) {
+            error(gameNo, "PlyCount " + plyCount + " but " + plies + " plies replayed");
+        }
+    }
+
+    // a PlyCount value, -1 if it is not a number
+    private static int parseCount(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isResult(byte[] s, int t, int end) {
+        return (end - t == 1 && s[t] == '*') || startsWith(s, t, end, "1-0") && end - t == 3
+                || startsWith(s, t, end, "0-1") && end - t == 3 || startsWith(s, t, end, "1/2-1/2") && end - t == 7;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static boolean startsWith(byte[] s, int at, int end, String prefix) {
+        if (end - at < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) if (s[at + i] != prefix.charAt(i)) return false;
+        return true;
+    }
+
+    private static int indexOf(byte[] s, int from, int end, byte c) {
+        for (int i = from; i < end; i++) if (s[i] == c) return i;
+        return -1;
+    }
+
+    private void error(long gameNo, String message) {
+        errors.increment();
+        if (reported.incrementAndGet() <= MAX_REPORTED_ERRORS) {
+            report("game " + (gameNo + 1) + ": " + message);
+        }
+    }
+
+    private static synchronized void report(String s) {
+        System.err.println(s);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("usage: PgnReader <file.pgn | -> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        PgnReader reader = new PgnReader(null);
+        long t0 = System.nanoTime();
+        try (ReadableByteChannel in = args[0].equals("-") ? Channels.newChannel(System.in)
+                : FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+            reader.run(in, threads);
+        }
+        long ms = Math.max(1, (System.nanoTime() - t0) / 1_000_000);
+        long g = reader.games.sum(), p = reader.positions.sum();
+        System.out.println(g + " games, " + p + " positions, " + reader.errors.sum() + " errors, "
+                + reader.bytes.sum() / (1024 * 1024) + "MB in " + ms + "ms: " + g * 1000 / ms + " games/s, "
+                + p * 1000 / ms + " positions/s (" + threads + " threads)");
+        System.exit(reader.errors.sum() == 0 ? 0 : 1);
+    }
+}
@@ -2,5 +2,10 @@ package game;
 
 public enum  Piece {
     EMPTY, WP, WN, WB, WR, WQ, WK,
-    BP, BN, BB, BR, BQ, BK, panwn
-}
\ No newline at end of file
+    BP, BN, BB, BR, BQ, BK, panwn;
+
+    // 0 for white pieces, 1 for black (only meaningful for non-empty ordinals)
+    public static int color(int piece) {
+        return piece >= BP.ordinal() ? 1 : 0;
+    }
+}
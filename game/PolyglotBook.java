@@ -0,0 +1,215 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+
+/**
+ * Polyglot (.bin) opening book, memory-mapped rather than read: the file is
+ * mapped with FileChannel.map in 1GB windows and probed by binary search, so
+ * opening even a multi-gigabyte book costs no heap and no load time.
+ *
+ * A book is a sorted array of 16-byte big-endian entries: key (8), move (2),
+ * weight (2), learn (4). Keys are Polyglot's own Zobrist hash, built from the
+ * 781-entry Random64 table of the format specification, which is bundled
+ * (PolyglotRandom). -Dchess.polyglotRandom=<file> (781 hex numbers) overrides
+ * it; either table is rejected unless it hashes the start position to the
+ * published key.
+ */
+public class PolyglotBook implements AutoCloseable {
+    public static final int RANDOM_COUNT = 781;
+    /** Polyglot key of the starting position, from the format specification */
+    public static final long START_KEY = 0x463B96181691FC9CL;
+
+    private static final int ENTRY = 16;
+    private static final int RANDOM_CASTLE = 768, RANDOM_EN_PASSANT = 772, RANDOM_TURN = 780;
+    // 2^26 entries = 1GB per mapped window
+    private static final int WINDOW_SHIFT = 26;
+    // Polyglot piece kind by Piece ordinal: black pawn 0, white pawn 1, ... white king 11
+    private static final int[] KIND = {-1, 1, 3, 5, 7, 9, 11, 0, 2, 4, 6, 8, 10};
+
+    private final long[] random;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] windows;
+    private final long entries;
+
+    public PolyglotBook(Path file, long[] random64) throws IOException {
+        if (random64.length != RANDOM_COUNT) throw new IllegalArgumentException("Random64 needs " + RANDOM_COUNT + " keys");
+        this.random = random64;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        entries = channel.size() / ENTRY;
+        long windowEntries = 1L << WINDOW_SHIFT;
+        windows = new MappedByteBuffer[(int) ((entries + windowEntries - 1) / windowEntries)];
+        for (int i = 0; i < windows.length; i++) {
+            long first = i * windowEntries;
+            long count = Math.min(windowEntries, entries - first);
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * ENTRY, count * ENTRY);
+        }
+    }
+
+    /** book with the table from defaultRandom64() */
+    public PolyglotBook(Path file) throws IOException {
+        this(file, defaultRandom64());
+    }
+
+    public long size() {
+        return entries;
+    }
+
+    // ------------------ Random64 table ------------------
+
+    /** the bundled Random64 table, or the one in -Dchess.polyglotRandom; checked against START_KEY */
+    public static long[] defaultRandom64() throws IOException {
+        String path = System.getProperty("chess.polyglotRandom");
+        if (path != null) return loadRandom64(Files.readString(Paths.get(path)));
+        // a self-test of the bundled copy, as for a loaded one
+        if (key(new Board(), PolyglotRandom.RANDOM64) != START_KEY) throw new IOException("bundled Random64 table is damaged");
+        return PolyglotRandom.RANDOM64.clone();
+    }
+
+    /** parse 781 hex numbers (0x prefix optional, any separators) and check them against START_KEY */
+    public static long[] loadRandom64(String text) throws IOException {
+        long[] r = new long[RANDOM_COUNT];
+        int n = 0;
+        for (String tok : text.split("[^0-9A-Fa-fxX]+")) {
+            if (tok.isEmpty()) continue;
+            if (tok.startsWith("0x") || tok.startsWith("0X")) tok = tok.substring(2);
+            if (n == RANDOM_COUNT) throw new IOException("more than " + RANDOM_COUNT + " Random64 keys");
+            try {
+                r[n++] = Long.parseUnsignedLong(tok, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("bad Random64 key '" + tok + "'", e);
+            }
+        }
+        if (n != RANDOM_COUNT) throw new IOException("expected " + RANDOM_COUNT + " Random64 keys, got " + n);
+        if (key(new Board(), r) != START_KEY) throw new IOException("not the Polyglot Random64 table (start position key differs)");
+        return r;
+    }
+
+    // ------------------ keys ------------------
+
+    public long key(Board board) {
+        return key(board, random);
+    }
+
+    static long key(Board board, long[] random) {
+        long key = 0L;
+        for (long bb = board.occupied; bb != 0; bb &= bb - 1) {
+            int sq = Long.numberOfTrailingZeros(bb);
+            // Polyglot counts rows from rank 1, we count them from rank 8
+            key ^= random[64 * KIND[board.squares[sq]] + 8 * (7 - sq / 8) + sq % 8];
+        }
+        for (int i = 0; i < 4; i++) {
+            // same order as our castling bits: white short, white long, black short, black long
+            if ((board.castlingRight & (1 << i)) != 0) key ^= random[RANDOM_CASTLE + i];
+        }
+        // the en-passant file only counts when a pawn of the side to move could take
+        int ep = board.enPassantSquare;
+        if (ep != -1) {
+            int us = board.whiteToMove ? 0 : 1;
+            long ourPawns = board.pieceBB[us == 0 ? Piece.WP.ordinal() : Piece.BP.ordinal()];
+            if ((Bitboards.PAWN[1 - us][ep] & ourPawns) != 0) key ^= random[RANDOM_EN_PASSANT + ep % 8];
+        }
+        if (board.whiteToMove) key ^= random[RANDOM_TURN];
+        return key;
+    }
+
+    // ------------------ probing ------------------
+
+    private long keyAt(long i) {
+        return window(i).getLong(offset(i));
+    }
+
+    private ByteBuffer window(long i) {
+        return windows[(int) (i >>> WINDOW_SHIFT)];
+    }
+
+    private int offset(long i) {
+        return (int) (i & ((1L << WINDOW_SHIFT) - 1)) * ENTRY;
+    }
+
+    /** index of the first entry with this key, or -1 */
+    private long first(long key) {
+        long lo = 0, hi = entries;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo < entries && keyAt(lo) == key ? lo : -1;
+    }
+
+    /**
+     * A legal book move for the board (packed, see Move.pack), picked at random
+     * in proportion to the entries' weights; Move.NONE when out of book.
+     */
+    public int probe(Board board, Random rnd) {
+        long key = key(board);
+        long at = first(key);
+        if (at < 0) return Move.NONE;
+
+        int[] legal = new int[MoveGenerator.MAX_MOVES];
+        int nLegal = MoveGenerator.generateLegal(board, legal, 0);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] weights = new int[MoveGenerator.MAX_MOVES];
+        int n = 0;
+        long total = 0;
+        for (long i = at; i < entries && keyAt(i) == key && n < moves.length; i++) {
+            ByteBuffer w = window(i);
+            int off = offset(i);
+            int m = decode(board, w.getShort(off + 8) & 0xFFFF, legal, nLegal);
+            if (m == Move.NONE) continue;
+            moves[n] = m;
+            weights[n] = w.getShort(off + 10) & 0xFFFF;
+            total += weights[n];
+            n++;
+        }
+        if (n == 0) return Move.NONE;
+        // all weights zero: any of them
+        if (total == 0) return moves[rnd.nextInt(n)];
+        long pick = (long) (rnd.nextDouble() * total);
+        for (int i = 0; i < n; i++) {
+            pick -= weights[i];
+            if (pick < 0) return moves[i];
+        }
+        return moves[n - 1];
+    }
+
+    // Polyglot move bits: to file 0-2, to row 3-5, from file 6-8, from row 9-11, promotion 12-14
+    private static int decode(Board board, int pm, int[] legal, int nLegal) {
+        int to = (7 - ((pm >> 3) & 7)) * 8 + (pm & 7);
+        int from = (7 - ((pm >> 9) & 7)) * 8 + ((pm >> 6) & 7);
+        int promoKind = (pm >> 12) & 7;
+
+        // castling is written as the king taking its own rook
+        int piece = board.squares[from];
+        if (piece == Piece.WK.ordinal() && from == 60 && to == 63) to = 62;
+        else if (piece == Piece.WK.ordinal() && from == 60 && to == 56) to = 58;
+        else if (piece == Piece.BK.ordinal() && from == 4 && to == 7) to = 6;
+        else if (piece == Piece.BK.ordinal() && from == 4 && to == 0) to = 2;
+
+        int promo = 0;
+        if (promoKind != 0) {
+            // 1 knight, 2 bishop, 3 rook, 4 queen
+            int off = board.whiteToMove ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+            promo = Piece.WP.ordinal() + promoKind + off;
+        }
+        for (int i = 0; i < nLegal; i++) {
+            int m = legal[i];
+            if (Move.from(m) == from && Move.to(m) == to && Move.promo(m) == promo) return m;
+        }
+        return Move.NONE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
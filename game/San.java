@@ -0,0 +1,89 @@
+package game;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Standard algebraic notation (e4, Nbd7, exd5, R1e2, e8=Q+, O-O-O) read
+ * against a position: the move is matched against the legal moves, so an
+ * ambiguous or illegal SAN is rejected rather than guessed.
+ */
+public final class San {
+    private static final String PIECES = "PNBRQK";
+    private static final int FLAG_KC = Flag.KC.ordinal();
+    private static final int FLAG_QC = Flag.QC.ordinal();
+
+    private San() {}
+
+    /** the legal move written as san, or Move.NONE */
+    public static int parse(Board board, String san) {
+        byte[] b = san.getBytes(StandardCharsets.ISO_8859_1);
+        return parse(board, b, 0, b.length, new int[MoveGenerator.MAX_MOVES]);
+    }
+
+    /** same, for the ASCII bytes s[start, end), with a caller-owned move buffer of MAX_MOVES */
+    public static int parse(Board board, byte[] s, int start, int end, int[] moves) {
+        // check, mate and annotation marks carry no information here
+        while (end > start && (s[end - 1] == '+' || s[end - 1] == '#' || s[end - 1] == '!' || s[end - 1] == '?')) end--;
+        if (end - start < 2) return Move.NONE;
+
+        int n = MoveGenerator.generateLegal(board, moves, 0);
+
+        // castling, also written with zeros
+        if (s[start] == 'O' || s[start] == '0') {
+            int len = end - start;
+            int flag;
+            if (len == 3 && s[start + 1] == '-' && s[start + 2] == s[start]) flag = FLAG_KC;
+            else if (len == 5 && s[start + 1] == '-' && s[start + 3] == '-'
+                    && s[start + 2] == s[start] && s[start + 4] == s[start]) flag = FLAG_QC;
+            else return Move.NONE;
+            for (int i = 0; i < n; i++) if (Move.flag(moves[i]) == flag) return moves[i];
+            return Move.NONE;
+        }
+
+        int type = PIECES.indexOf(s[start]);
+        if (type > 0) start++;
+        else type = 0;
+
+        // promotion: e8=Q or e8Q
+        int promoType = -1;
+        if (type == 0) {
+            int p = PIECES.indexOf(s[end - 1]);
+            if (p > 0 && p < 5) {
+                promoType = p;
+                end--;
+                if (end > start && s[end - 1] == '=') end--;
+            }
+        }
+
+        if (end - start < 2) return Move.NONE;
+        int toFile = s[end - 2] - 'a', toRank = s[end - 1] - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) return Move.NONE;
+        int to = (7 - toRank) * 8 + toFile;
+
+        // what is left in between: a from file and/or rank, and 'x'
+        int fromFile = -1, fromRank = -1;
+        for (int i = start; i < end - 2; i++) {
+            byte c = s[i];
+            if (c >= 'a' && c <= 'h') fromFile = c - 'a';
+            else if (c >= '1' && c <= '8') fromRank = c - '1';
+            else if (c != 'x' && c != ':' && c != '-') return Move.NONE;
+        }
+
+        int off = board.whiteToMove ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+        int moved = Piece.WP.ordinal() + type + off;
+        int promo = promoType < 0 ? Piece.EMPTY.ordinal() : Piece.WP.ordinal() + promoType + off;
+        int found = Move.NONE;
+        for (int i = 0; i < n; i++) {
+            int m = moves[i];
+            if (Move.to(m) != to || Move.moved(m) != moved || Move.promo(m) != promo) continue;
+            int from = Move.from(m);
+            if (fromFile >= 0 && from % 8 != fromFile) continue;
+            if (fromRank >= 0 && 7 - from / 8 != fromRank) continue;
+            // two candidates: the SAN is ambiguous
+            if (found != Move.NONE) return Move.NONE;
+            found = m;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,374 @@
+package game;
+
+import java.util.function.Consumer;
+
+
+/**
+ * Iterative-deepening negamax alpha-beta with principal-variation search and
+ * aspiration windows. Works on its own Board (make/undo, never copies) and
+ * shares the engine's transposition table.
+ */
+public class Search {
+    public static final int MAX_PLY = 64;
+    public static final int MATE = 32000;
+    public static final int INF = 32001;
+    // scores beyond this are "mate in n"
+    public static final int MATE_BOUND = MATE - MAX_PLY;
+
+    private static final int ASPIRATION = 25;
+    // how often (in nodes) the clock is looked at
+    private static final int CHECK_EVERY = 2048;
+
+    /** outcome of a search (or of one finished iteration) */
+    public static class Result {
+        public int bestMove = Move.NONE;
+        public int score;
+        public int[] pv = new int[0];
+        public int depth;
+        public long nodes;
+        public long elapsedMs;
+
+        public long nps() {
+            return elapsedMs == 0 ? nodes * 1000 : nodes * 1000 / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("depth ").append(depth).append(" score ").append(score)
+              .append(" nodes ").append(nodes).append(" time ").append(elapsedMs).append("ms")
+              .append(" nps ").append(nps()).append(" pv");
+            for (int m : pv) sb.append(' ').append(moveToString(m));
+            return sb.toString();
+        }
+    }
+
+    private final Engine engine;
+    private final Board board;
+    private final TranspositionTable tt;
+    // one staged move picker per ply
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY + 1];
+
+    // triangular PV table
+    private final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+
+    // limits for the current search
+    private long maxNodes;
+    private volatile long deadlineNs;
+    // never cleared: a Search serves one search() call, and a stop() that
+    // lands before it starts makes it return at once
+    private volatile boolean stopped;
+
+    // quiet-move ordering heuristics, private to this Search (and so to its thread)
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[13][64];
+    private final int[] seeGain = new int[32];
+    // pawn-structure cache, per Search for the same reason
+    public final PawnTable pawns = new PawnTable();
+    // endgame bitbases, null when the engine has none
+    private final Bitbases bitbases;
+    private final int[] bitbaseSquares = new int[6];
+
+    private long nodes;
+    private long startNs;
+
+    // first iteration to search; Lazy SMP helpers start deeper to spread the work
+    public int startDepth = 1;
+    // helpers share the table with other searches and must not bump its age: Lazy SMP
+    // helpers leave that to the main search, session server games to the server's tick
+    public boolean helper = false;
+
+    // called after every completed iteration (null = quiet)
+    public Consumer<Result> onIteration;
+
+    public Search(Engine engine, Board board) {
+        this.engine = engine;
+        this.board = board;
+        this.tt = engine.tt;
+        this.bitbases = engine.bitbases;
+        for (int i = 0; i <= MAX_PLY; i++) pickers[i] = new MovePicker();
+    }
+
+    /** ask a running search to return as soon as possible (safe from any thread) */
+    public void stop() {
+        stopped = true;
+    }
+
+    /** replace the time limit with timeMs from now, 0 for none (safe from any thread, e.g. on ponderhit) */
+    public void setTimeLimit(long timeMs) {
+        deadlineNs = timeMs > 0 ? System.nanoTime() + timeMs * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    public long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Search the current position of the board.
+     * maxDepth, maxNodes and timeMs limit the search, pass 0 for "no limit".
+     */
+    public Result search(int maxDepth, long maxNodes, long timeMs) {
+        startNs = System.nanoTime();
+        if (Metrics.ENABLED) Metrics.searchStarted();
+        this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        this.deadlineNs = timeMs > 0 ? startNs + timeMs * 1_000_000L : Long.MAX_VALUE;
+        if (maxDepth <= 0 || maxDepth >= MAX_PLY) maxDepth = MAX_PLY - 1;
+        nodes = 0;
+        if (!helper) tt.newSearch();
+
+        Result best = new Result();
+        int score = 0;
+        long prevIterationNodes = 0;
+        for (int depth = Math.min(startDepth, maxDepth); depth <= maxDepth; depth++) {
+            long nodesBefore = nodes;
+            score = aspiration(depth, score);
+            if (stopped && best.bestMove != Move.NONE) break;
+            if (Metrics.ENABLED && !stopped) {
+                Metrics.iteration(depth, score, nodes - nodesBefore, prevIterationNodes);
+                prevIterationNodes = nodes - nodesBefore;
+            }
+
+            best = new Result();
+            best.depth = depth;
+            best.score = score;
+            best.pv = java.util.Arrays.copyOf(pvTable[0], pvLength[0]);
+            best.bestMove = best.pv.length > 0 ? best.pv[0] : Move.NONE;
+            best.nodes = nodes;
+            best.elapsedMs = (System.nanoTime() - startNs) / 1_000_000L;
+            if (onIteration != null) onIteration.accept(best);
+
+            // no point going deeper once a forced mate is found
+            if (stopped || Math.abs(score) >= MATE_BOUND) break;
+        }
+        if (best.bestMove == Move.NONE) {
+            // stopped before the first iteration finished: any legal move beats none
+            MovePicker any = pickers[0].init(board, Move.NONE, Move.NONE, Move.NONE, null);
+            if (any.hasNext()) {
+                best.bestMove = any.nextInt();
+                best.pv = new int[]{best.bestMove};
+            }
+        }
+        best.nodes = nodes;
+        best.elapsedMs = (System.nanoTime() - startNs) / 1_000_000L;
+        if (Metrics.ENABLED) Metrics.searchEnded();
+        return best;
+    }
+
+    // narrow window around the last score, widened on each fail
+    private int aspiration(int depth, int prev) {
+        if (depth < 4) return negamax(depth, 0, -INF, INF);
+        int delta = ASPIRATION;
+        int alpha = Math.max(prev - delta, -INF);
+        int beta = Math.min(prev + delta, INF);
+        while (true) {
+            int score = negamax(depth, 0, alpha, beta);
+            if (stopped) return score;
+            if (score <= alpha) {
+                alpha = Math.max(score - delta, -INF);
+            } else if (score >= beta) {
+                beta = Math.min(score + delta, INF);
+            } else {
+                return score;
+            }
+            delta *= 2;
+        }
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        // quiesce counts its own node
+        if (depth <= 0) return quiesce(ply, alpha, beta);
+        pvLength[ply] = 0;
+        if ((++nodes & (CHECK_EVERY - 1)) == 0) checkLimits();
+        if (Metrics.ENABLED) Metrics.nodes.increment();
+        if (stopped) return 0;
+
+        // fifty move rule, and repetitions: once since the root, or threefold with the game's
+        if (ply > 0 && (board.halfMoveClock >= 100 || board.isSearchRepetition(ply))) return 0;
+        // a drawn bitbase endgame needs no search; won ones are still searched, for the mate
+        if (ply > 0 && bitbases != null && bitbases.probe(board, bitbaseSquares) == Bitbases.DRAW) return 0;
+        if (ply >= MAX_PLY - 1) return evaluate();
+
+        boolean pvNode = beta - alpha > 1;
+        long key = board.key;
+        int ttMove = Move.NONE;
+        long entry = tt.probe(key);
+        if (Metrics.ENABLED) Metrics.ttProbes.increment();
+        if (entry != 0) {
+            if (Metrics.ENABLED) Metrics.ttHits.increment();
+            ttMove = TranspositionTable.move(entry);
+            if (!pvNode && TranspositionTable.depth(entry) >= depth) {
+                int s = fromTT(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && s >= beta)
+                        || (bound == TranspositionTable.UPPER && s <= alpha)) {
+                    if (Metrics.ENABLED) Metrics.ttCutoffs.increment();
+                    return s;
+                }
+            }
+        }
+
+        MovePicker picker = pickers[ply].init(board, ttMove, killers[ply][0], killers[ply][1], history);
+        int origAlpha = alpha;
+        int bestScore = -INF;
+        int bestMove = Move.NONE;
+        int played = 0;
+        while (picker.hasNext()) {
+            int m = picker.nextInt();
+            board.makeMove(m);
+            if (Metrics.ENABLED) Metrics.movesSearched.increment();
+
+            int score;
+            if (played++ == 0) {
+                score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // null window first, re-search only if it might beat alpha
+                score = -negamax(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            board.undoMove();
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = m;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, m);
+                    if (alpha >= beta) {
+                        if (Metrics.ENABLED) {
+                            Metrics.betaCutoffs.increment();
+                            if (played == 1) Metrics.firstMoveCutoffs.increment();
+                        }
+                        if (Move.captured(m) == Piece.EMPTY.ordinal() && Move.promo(m) == 0) {
+                            rememberQuiet(m, ply, depth);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (played == 0) {
+            // checkmate (prefer the quickest) or stalemate
+            return board.isInCheck(board.whiteToMove) ? -MATE + ply : 0;
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.LOWER
+                : bestScore > origAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        tt.store(key, bestMove, toTT(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    /**
+     * Captures only, until the position is quiet. The side to move may stand
+     * pat on the static eval; captures that SEE says lose material are
+     * skipped. In check every evasion is searched instead.
+     */
+    private int quiesce(int ply, int alpha, int beta) {
+        pvLength[ply] = 0;
+        if ((++nodes & (CHECK_EVERY - 1)) == 0) checkLimits();
+        if (Metrics.ENABLED) Metrics.qnodes.increment();
+        if (stopped) return 0;
+        if (ply >= MAX_PLY - 1) return evaluate();
+
+        boolean inCheck = board.isInCheck(board.whiteToMove);
+        int bestScore = -INF;
+        MovePicker picker;
+        if (inCheck) {
+            picker = pickers[ply].init(board, Move.NONE, Move.NONE, Move.NONE, history);
+        } else {
+            bestScore = evaluate();
+            if (bestScore >= beta) return bestScore;
+            if (bestScore > alpha) alpha = bestScore;
+            picker = pickers[ply].initCaptures(board);
+        }
+
+        int played = 0;
+        while (picker.hasNext()) {
+            int m = picker.nextInt();
+            if (!inCheck && See.see(board, m, seeGain) < 0) continue;
+            played++;
+            board.makeMove(m);
+            if (Metrics.ENABLED) Metrics.movesSearched.increment();
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            board.undoMove();
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, m);
+                    if (alpha >= beta) {
+                        if (Metrics.ENABLED) {
+                            Metrics.betaCutoffs.increment();
+                            if (played == 1) Metrics.firstMoveCutoffs.increment();
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (inCheck && played == 0) return -MATE + ply;
+        return bestScore;
+    }
+
+    // static eval, replaced by the bitbase verdict in the endgames the bitbases cover
+    private int evaluate() {
+        if (bitbases != null) {
+            int wdl = bitbases.probe(board, bitbaseSquares);
+            if (wdl != Bitbases.UNKNOWN) return Bitbases.score(board, wdl);
+        }
+        return Evaluation.evaluate(board, pawns);
+    }
+
+    private void rememberQuiet(int m, int ply, int depth) {
+        if (killers[ply][0] != m) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = m;
+        }
+        int[] h = history[Move.moved(m)];
+        h[Move.to(m)] += depth * depth;
+        // keep the scores bounded, halving keeps their order
+        if (h[Move.to(m)] > 1 << 20) {
+            for (int[] row : history) for (int i = 0; i < 64; i++) row[i] >>= 1;
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        pvTable[ply][0] = move;
+        System.arraycopy(pvTable[ply + 1], 0, pvTable[ply], 1, pvLength[ply + 1]);
+        pvLength[ply] = pvLength[ply + 1] + 1;
+    }
+
+    private void checkLimits() {
+        if (nodes >= maxNodes || System.nanoTime() >= deadlineNs) stopped = true;
+    }
+
+    // mate scores are stored relative to the node, not the root
+    private static int toTT(int score, int ply) {
+        if (score >= MATE_BOUND) return score + ply;
+        if (score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int fromTT(int score, int ply) {
+        if (score >= MATE_BOUND) return score - ply;
+        if (score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+
+    /** coordinate notation, e.g. e2e4 or e7e8q */
+    public static String moveToString(int m) {
+        StringBuilder sb = new StringBuilder();
+        sb.append((char) ('a' + Move.from(m) % 8)).append((char) ('8' - Move.from(m) / 8));
+        sb.append((char) ('a' + Move.to(m) % 8)).append((char) ('8' - Move.to(m) / 8));
+        int promo = Move.promo(m);
+        if (promo != 0) sb.append(Character.toLowerCase(Piece.values()[promo].name().charAt(1)));
+        return sb.toString();
+    }
+}
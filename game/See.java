@@ -0,0 +1,96 @@
+package game;
+
+
+/**
+ * Static exchange evaluation: the material result of a capture on one
+ * square when both sides keep recapturing with their least valuable
+ * attacker, and either side may stop when going on would lose more.
+ *
+ * Built on Board.attackersTo with a shrinking occupancy, so sliders lined
+ * up behind the first attacker (x-rays) join in as the pieces in front of
+ * them are used up. Pins are not looked at.
+ */
+public final class See {
+
+    // by Piece ordinal, in centipawns
+    public static final int[] VALUE = {0, 100, 320, 330, 500, 900, 20000, 100, 320, 330, 500, 900, 20000};
+
+    private See() {}
+
+    /** material won (negative: lost) by the side to move playing the packed move m */
+    public static int see(Board board, int m) {
+        return see(board, m, new int[32]);
+    }
+
+    /** same, with a caller-owned swap list of 32 entries so nothing is allocated */
+    public static int see(Board board, int m, int[] gain) {
+        int from = Move.from(m);
+        int to = Move.to(m);
+        int promo = Move.promo(m);
+        long occ = board.occupied ^ (1L << from);
+
+        gain[0] = VALUE[board.squares[to]];
+        if (Move.flag(m) == Flag.EN_PASSANT.ordinal()) {
+            int capSq = board.whiteToMove ? to + 8 : to - 8;
+            occ ^= 1L << capSq;
+            gain[0] = VALUE[Piece.WP.ordinal()];
+        }
+        // the piece now standing on 'to', next in line to be taken
+        int onSquare = VALUE[Move.moved(m)];
+        if (promo != 0) {
+            gain[0] += VALUE[promo] - VALUE[Piece.WP.ordinal()];
+            onSquare = VALUE[promo];
+        }
+
+        long bishops = board.pieceBB[Piece.WB.ordinal()] | board.pieceBB[Piece.BB.ordinal()]
+                | board.pieceBB[Piece.WQ.ordinal()] | board.pieceBB[Piece.BQ.ordinal()];
+        long rooks = board.pieceBB[Piece.WR.ordinal()] | board.pieceBB[Piece.BR.ordinal()]
+                | board.pieceBB[Piece.WQ.ordinal()] | board.pieceBB[Piece.BQ.ordinal()];
+        long attackers = board.attackersTo(to, occ) & occ;
+        int side = board.whiteToMove ? 1 : 0;
+        int d = 0;
+
+        while (true) {
+            long ours = attackers & board.colorBB[side];
+            if (ours == 0) break;
+
+            // least valuable attacker
+            int off = side == 0 ? 0 : Piece.BP.ordinal() - Piece.WP.ordinal();
+            int piece = 0;
+            long bit = 0;
+            for (int p = Piece.WP.ordinal(); p <= Piece.WK.ordinal(); p++) {
+                long bb = ours & board.pieceBB[p + off];
+                if (bb != 0) {
+                    piece = p + off;
+                    bit = bb & -bb;
+                    break;
+                }
+            }
+            // the king may only take last, when nothing can take it back
+            if ((piece == Piece.WK.ordinal() || piece == Piece.BK.ordinal())
+                    && (attackers & board.colorBB[1 - side]) != 0) {
+                break;
+            }
+
+            // what this capture wins if it is not answered; every capture is
+            // recorded, since cutting the list short (as soon as neither side
+            // gains by going on) keeps the sign but not the amount
+            d++;
+            gain[d] = onSquare - gain[d - 1];
+
+            occ ^= bit;
+            attackers |= (Bitboards.bishopAttacks(to, occ) & bishops) | (Bitboards.rookAttacks(to, occ) & rooks);
+            attackers &= occ;
+            onSquare = VALUE[piece];
+            side = 1 - side;
+            if (d == gain.length - 1) break;
+        }
+
+        // each side picks the better of capturing or standing pat, from the end back
+        while (d > 0) {
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+            d--;
+        }
+        return gain[0];
+    }
+}
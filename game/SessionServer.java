@@ -0,0 +1,297 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Many games in one process, served over a local TCP socket with a line
+ * protocol. Every connection is one game with its own Board, handled by its
+ * own thread: a virtual thread where the JVM has them (21+, looked up by
+ * reflection since we build for 17), otherwise a small-stack platform
+ * thread. Searches do not run on those threads but on a fixed pool of
+ * engine workers, so a burst of "go" commands queues up instead of starving
+ * the sessions' I/O. The transposition table, book and bitbases are the
+ * engine's and are shared by all games. A game's search does not age the
+ * table, since with many games searching each one would make the others'
+ * fresh entries look stale; the server ages it once per tick instead
+ * (-Dchess.ttAgeMs, default 5000) when a search has run since the last one.
+ *
+ * One reply line per command:
+ *
+ *   new [fen <fen>]            ok <fen>
+ *   move <move>...             ok <fen>              (coordinate notation, e.g. e2e4 e7e8q;
+ *                                                    an illegal one leaves the game as it was)
+ *   go [depth d] [nodes n] [movetime ms]
+ *                              bestmove <move> score <cp> depth <d> nodes <n>, the move is played
+ *   fen                        fen <fen>
+ *   legal                      legal <move>...
+ *   stats [gc]                 stats sessions <n> searching <n>/<workers> ... per-session <bytes>
+ *   quit                       bye
+ *
+ * Anything else gets "error ...".
+ *
+ *   java -cp chess-engine.jar game.SessionServer [port] [workers]
+ */
+public class SessionServer {
+    public static final int DEFAULT_PORT = 7777;
+
+    private final Engine engine;
+    private final int workers;
+    private final ExecutorService searchPool;
+    private final ExecutorService sessionPool;
+    private final Semaphore sessionSlots;
+    private final int maxSessions;
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger searching = new AtomicInteger();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicInteger searchesSinceTick = new AtomicInteger();
+    private final ScheduledExecutorService ticker;
+    // heap in use (after a collection) before the first session, to tell the sessions' share apart
+    private final long baselineHeap;
+    private final boolean virtualThreads;
+
+    public SessionServer(Engine engine, int workers, int maxSessions) {
+        this.engine = engine;
+        this.workers = Math.max(1, workers);
+        this.maxSessions = maxSessions;
+        this.sessionSlots = new Semaphore(maxSessions);
+        AtomicInteger n = new AtomicInteger();
+        this.searchPool = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread t = new Thread(r, "search-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorService virtual = virtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.sessionPool = virtual != null ? virtual : Executors.newCachedThreadPool(r -> {
+            // a session only parses lines and waits, 256KB of stack is plenty
+            Thread t = new Thread(null, r, "session", 256 * 1024);
+            t.setDaemon(true);
+            return t;
+        });
+        long tickMs = Long.getLong("chess.ttAgeMs", 5000);
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tt-age");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        System.gc();
+        this.baselineHeap = heapUsed();
+    }
+
+    // one table age per tick for all games, and none while the server is idle
+    private void tick() {
+        if (searchesSinceTick.getAndSet(0) > 0) engine.tt.newSearch();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() on JDK 21+, null before
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** accept connections on localhost until the socket is closed */
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress())) {
+            System.err.println("session server on " + server.getLocalSocketAddress() + ", " + workers
+                    + " search workers, " + (virtualThreads ? "virtual" : "platform") + " session threads");
+            while (true) {
+                Socket socket = server.accept();
+                if (!sessionSlots.tryAcquire()) {
+                    try (Socket s = socket) {
+                        send(s.getOutputStream(), "error server full (" + maxSessions + " sessions)");
+                    }
+                    continue;
+                }
+                sessionPool.execute(() -> {
+                    sessions.incrementAndGet();
+                    try (Socket s = socket) {
+                        session(s);
+                    } catch (IOException e) {
+                        // the client went away
+                    } finally {
+                        sessions.decrementAndGet();
+                        sessionSlots.release();
+                    }
+                });
+            }
+        }
+    }
+
+    // replies are written straight to the socket: no writer, so no per-session encode buffer
+    private static void send(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void session(Socket socket) throws IOException {
+        // commands are short, a small read buffer keeps idle sessions cheap
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 512);
+        OutputStream out = socket.getOutputStream();
+        Game game = new Game();
+        send(out, "hello session " + nextId.incrementAndGet());
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (line.equals("quit")) {
+                send(out, "bye");
+                return;
+            }
+            send(out, handle(game, line.split("\\s+")));
+        }
+    }
+
+    /** one game's state, all that a session keeps between commands */
+    static class Game {
+        Board board = new Board();
+    }
+
+    private String handle(Game game, String[] t) {
+        switch (t[0]) {
+            case "new":
+                if (t.length > 2 && t[1].equals("fen")) {
+                    try {
+                        game.board = Board.fromFen(String.join(" ", Arrays.copyOfRange(t, 2, t.length)));
+                    } catch (IllegalArgumentException e) {
+                        return "error " + e.getMessage();
+                    }
+                } else {
+                    game.board = new Board();
+                }
+                return "ok " + game.board.toFen();
+            case "move":
+                // all or nothing: a bad move takes back the ones before it
+                for (int i = 1; i < t.length; i++) {
+                    int m = Uci.findMove(game.board, t[i]);
+                    if (m == Move.NONE) {
+                        for (int k = 1; k < i; k++) game.board.undoMove();
+                        return "error illegal move " + t[i];
+                    }
+                    game.board.makeMove(m);
+                }
+                return "ok " + game.board.toFen();
+            case "go":
+                return go(game, t);
+            case "fen":
+                return "fen " + game.board.toFen();
+            case "legal": {
+                StringBuilder sb = new StringBuilder("legal");
+                int[] buf = new int[MoveGenerator.MAX_MOVES];
+                int n = MoveGenerator.generateLegal(game.board, buf, 0);
+                for (int i = 0; i < n; i++) sb.append(' ').append(Search.moveToString(buf[i]));
+                return sb.toString();
+            }
+            case "stats":
+                // "stats gc" collects first, so the heap figures hold live data only
+                if (t.length > 1 && t[1].equals("gc")) System.gc();
+                return stats();
+            default:
+                return "error unknown command " + t[0];
+        }
+    }
+
+    private String go(Game game, String[] t) {
+        int depth = 0;
+        long nodes = 0, moveTime = 0;
+        try {
+            for (int i = 1; i < t.length; i++) {
+                switch (t[i]) {
+                    case "depth": depth = Integer.parseInt(t[++i]); break;
+                    case "nodes": nodes = Long.parseLong(t[++i]); break;
+                    case "movetime": moveTime = Long.parseLong(t[++i]); break;
+                    default: return "error unknown go option " + t[i];
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "error bad go command";
+        }
+        // no limit given: the engine's default move time
+        if (depth == 0 && nodes == 0 && moveTime == 0) moveTime = engine.searchTimeMs;
+
+        if (engine.book != null) {
+            int bm = engine.book.probe(game.board, engine.bookRandom);
+            if (bm != Move.NONE) {
+                game.board.makeMove(bm);
+                return "bestmove " + Search.moveToString(bm) + " book";
+            }
+        }
+
+        Board root = new Board(game.board);
+        int d = depth;
+        long n = nodes, ms = moveTime;
+        Future<Search.Result> f = searchPool.submit(() -> {
+            searching.incrementAndGet();
+            searchesSinceTick.incrementAndGet();
+            try {
+                Search search = new Search(engine, root);
+                // the table's age is the server's (see tick)
+                search.helper = true;
+                return search.search(d, n, ms);
+            } finally {
+                searching.decrementAndGet();
+            }
+        });
+        Search.Result r;
+        try {
+            r = f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.cancel(true);
+            return "error interrupted";
+        } catch (ExecutionException e) {
+            return "error search failed: " + e.getCause();
+        }
+        if (r.bestMove == Move.NONE) return "bestmove (none)";
+        game.board.makeMove(r.bestMove);
+        return "bestmove " + Search.moveToString(r.bestMove) + " score " + r.score + " depth " + r.depth
+                + " nodes " + r.nodes;
+    }
+
+    /**
+     * Session count, busy workers, and the heap the sessions take beyond what
+     * the server used before the first one, per session. Right after a
+     * collection this is what a game really costs; otherwise it also counts
+     * garbage and is an upper bound.
+     */
+    public String stats() {
+        int n = sessions.get();
+        long used = heapUsed();
+        long perSession = n == 0 ? 0 : Math.max(0, used - baselineHeap) / n;
+        return "stats sessions " + n + " searching " + searching.get() + "/" + workers
+                + " heap " + used / 1024 + "KB baseline " + baselineHeap / 1024 + "KB per-session " + perSession;
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("chess.port", DEFAULT_PORT);
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxSessions = Integer.getInteger("chess.maxSessions", 10_000);
+        new SessionServer(new Engine(), workers, maxSessions).serve(port);
+    }
+}
@@ -0,0 +1,152 @@
+package game;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Fixed-size hash table for search results, stored off-heap in direct buffers.
+ *
+ * Buckets are 64 bytes (one cache line) holding 4 entries of two longs:
+ * (key ^ data, data). Readers and writers never lock; a half-written entry
+ * fails the key check and simply reads as a miss.
+ *
+ * data layout: bits 0-26 packed move, 27-42 score, 43-50 depth,
+ * 51-52 bound, 53-58 age.
+ *
+ * Direct memory is capped by -XX:MaxDirectMemorySize (defaults to the heap
+ * size), raise it when asking for tables larger than the heap.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 1;
+    public static final int LOWER = 2; // score is a lower bound (fail high)
+    public static final int UPPER = 3; // score is an upper bound (fail low)
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+    // one direct buffer is limited to 2GB, so large tables are split in 1GB chunks
+    private static final int CHUNK_SHIFT = 30 - 6; // buckets per chunk = 2^24
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer[] chunks;
+    private final long bucketMask;
+    private volatile int age = 0;
+
+    /** size is rounded down to a power of two number of buckets (minimum 1MB) */
+    public TranspositionTable(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        long buckets = Long.highestOneBit(bytes / BUCKET_BYTES);
+        bucketMask = buckets - 1;
+
+        long perChunk = 1L << CHUNK_SHIFT;
+        int n = (int) ((buckets + perChunk - 1) / perChunk);
+        chunks = new ByteBuffer[n];
+        for (int i = 0; i < n; i++) {
+            long chunkBuckets = Math.min(perChunk, buckets - i * perChunk);
+            chunks[i] = ByteBuffer.allocateDirect((int) (chunkBuckets * BUCKET_BYTES)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    public long sizeBytes() {
+        return (bucketMask + 1) * BUCKET_BYTES;
+    }
+
+    /** call once per new search so entries from older searches get replaced first */
+    public void newSearch() {
+        age = (age + 1) & 63;
+    }
+
+    public void clear() {
+        for (ByteBuffer b : chunks) {
+            for (int i = 0; i < b.capacity(); i += 8) LONGS.setOpaque(b, i, 0L);
+        }
+        age = 0;
+    }
+
+    /** returns the entry's data word, or 0 on a miss (a stored entry never has data 0) */
+    public long probe(long key) {
+        long bucket = key & bucketMask;
+        ByteBuffer b = chunks[(int) (bucket >>> CHUNK_SHIFT)];
+        int base = (int) (bucket & ((1L << CHUNK_SHIFT) - 1)) * BUCKET_BYTES;
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int off = base + i * ENTRY_BYTES;
+            long check = (long) LONGS.getOpaque(b, off);
+            long data = (long) LONGS.getOpaque(b, off + 8);
+            if ((check ^ data) == key && data != 0) return data;
+        }
+        return 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        long bucket = key & bucketMask;
+        ByteBuffer b = chunks[(int) (bucket >>> CHUNK_SHIFT)];
+        int base = (int) (bucket & ((1L << CHUNK_SHIFT) - 1)) * BUCKET_BYTES;
+        int curAge = age;
+
+        // same position -> overwrite it, otherwise evict the least valuable entry:
+        // empty first, then the shallowest once older searches are penalised
+        int victim = base;
+        int worst = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int off = base + i * ENTRY_BYTES;
+            long check = (long) LONGS.getOpaque(b, off);
+            long data = (long) LONGS.getOpaque(b, off + 8);
+            if (data == 0) {
+                if (worst > Integer.MIN_VALUE) {
+                    victim = off;
+                    worst = Integer.MIN_VALUE;
+                }
+                continue;
+            }
+            if ((check ^ data) == key) {
+                // keep the old best move if this store has none
+                if (move == Move.NONE) move = move(data);
+                // don't let a shallow result wipe a deeper exact one of this search
+                if (age(data) == curAge && depth(data) > depth + 2 && bound(data) == EXACT && bound != EXACT) return;
+                victim = off;
+                break;
+            }
+            int value = depth(data) - 8 * ((curAge - age(data)) & 63);
+            if (value < worst) {
+                worst = value;
+                victim = off;
+            }
+        }
+
+        long data = pack(move, score, depth, bound, curAge);
+        LONGS.setOpaque(b, victim, key ^ data);
+        LONGS.setOpaque(b, victim + 8, data);
+    }
+
+    /** permille of sampled entries written by the current search */
+    public int hashfull() {
+        ByteBuffer b = chunks[0];
+        int samples = (int) Math.min(1000, (bucketMask + 1) * BUCKET_ENTRIES);
+        int used = 0;
+        for (int i = 0; i < samples; i++) {
+            long data = (long) LONGS.getOpaque(b, i * ENTRY_BYTES + 8);
+            if (data != 0 && age(data) == age) used++;
+        }
+        return used * 1000 / samples;
+    }
+
+    // ------------------ data word ------------------
+
+    private static long pack(int move, int score, int depth, int bound, int age) {
+        return (move & 0x7FFFFFFL)
+                | ((long) (score & 0xFFFF) << 27)
+                | ((long) Math.max(0, Math.min(depth, 255)) << 43)
+                | ((long) bound << 51)
+                | ((long) age << 53);
+    }
+
+    public static int move(long data)  { return (int) (data & 0x7FFFFFF); }
+    public static int score(long data) { return (short) (data >>> 27); }
+    public static int depth(long data) { return (int) (data >>> 43) & 255; }
+    public static int bound(long data) { return (int) (data >>> 51) & 3; }
+    private static int age(long data)  { return (int) (data >>> 53) & 63; }
+}
@@ -0,0 +1,318 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+
+/**
+ * UCI front end. The thread calling run() only reads commands; every "go"
+ * searches on its own thread, so "stop", "ponderhit" and "isready" are
+ * handled while a search is running. Search checks its stop flag at every
+ * node, so a "stop" ends the search within a few microseconds.
+ *
+ *   java -jar chess-engine.jar uci
+ */
+public class Uci {
+    private static final String NAME = "chess";
+    // kept back from the clock for GUI and OS lag
+    private static final long MOVE_OVERHEAD_MS = 50;
+    // moves left assumed when the GUI sends no movestogo
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+
+    private final Engine engine;
+    private final PrintStream out;
+
+    private Thread searchThread;
+    private volatile LazySmp current;
+
+    // "go ponder" and "go infinite" must not send bestmove before stop/ponderhit
+    private final Object hold = new Object();
+    private boolean holdBestMove;
+    // time to switch to on ponderhit, 0 = none
+    private volatile long ponderTimeMs;
+
+    public Uci(Engine engine, PrintStream out) {
+        this.engine = engine;
+        this.out = out;
+    }
+
+    /** read commands until "quit" or end of input */
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!handle(line.trim())) break;
+        }
+        stopSearch();
+        waitForSearch();
+    }
+
+    /** one command line, false on "quit" */
+    public boolean handle(String line) {
+        if (line.isEmpty()) return true;
+        String[] t = line.split("\\s+");
+        switch (t[0]) {
+            case "uci":
+                send("id name " + NAME);
+                send("id author " + NAME + " authors");
+                send("option name Hash type spin default " + engine.tt.sizeBytes() / (1024 * 1024) + " min 1 max 65536");
+                send("option name Threads type spin default " + engine.threads + " min 1 max 256");
+                send("option name Ponder type check default false");
+                send("option name BookFile type string default <empty>");
+                send("option name BitbasePath type string default <empty>");
+                send("uciok");
+                break;
+            case "isready":
+                send("readyok");
+                break;
+            case "setoption":
+                setOption(t);
+                break;
+            case "ucinewgame":
+                waitForSearch();
+                engine.tt.clear();
+                break;
+            case "position":
+                waitForSearch();
+                position(t);
+                break;
+            case "go":
+                waitForSearch();
+                go(t);
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "ponderhit":
+                ponderHit();
+                break;
+            case "quit":
+                return false;
+            default:
+                send("info string unknown command " + t[0]);
+        }
+        return true;
+    }
+
+    private void setOption(String[] t) {
+        // setoption name <id> [value <x>], the name may contain spaces
+        StringBuilder name = new StringBuilder();
+        String value = null;
+        int i = 1;
+        if (i < t.length && t[i].equals("name")) i++;
+        for (; i < t.length && !t[i].equals("value"); i++) {
+            if (name.length() > 0) name.append(' ');
+            name.append(t[i]);
+        }
+        if (i + 1 < t.length) value = t[i + 1];
+
+        waitForSearch();
+        try {
+            switch (name.toString().toLowerCase()) {
+                case "hash":
+                    engine.tt = new TranspositionTable(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    engine.threads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "ponder":
+                    // nothing to set up, "go ponder" is handled either way
+                    break;
+                case "bookfile":
+                    engine.openBook(value == null || value.equals("<empty>") ? null : value);
+                    break;
+                case "bitbasepath":
+                    engine.openBitbases(value == null || value.equals("<empty>") ? null : value);
+                    break;
+                default:
+                    send("info string unknown option " + name);
+            }
+        } catch (NumberFormatException e) {
+            send("info string bad value for " + name + ": " + value);
+        }
+    }
+
+    private void position(String[] t) {
+        int i = 1;
+        Board board;
+        if (i < t.length && t[i].equals("startpos")) {
+            board = new Board();
+            i++;
+        } else if (i < t.length && t[i].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i++; i < t.length && !t[i].equals("moves"); i++) fen.append(t[i]).append(' ');
+            try {
+                board = Board.fromFen(fen.toString());
+            } catch (IllegalArgumentException e) {
+                send("info string " + e.getMessage());
+                return;
+            }
+        } else {
+            send("info string position needs startpos or fen");
+            return;
+        }
+
+        if (i < t.length && t[i].equals("moves")) {
+            for (i++; i < t.length; i++) {
+                int m = findMove(board, t[i]);
+                if (m == Move.NONE) {
+                    send("info string illegal move " + t[i]);
+                    break;
+                }
+                board.makeMove(m);
+            }
+        }
+        engine.board = board;
+        engine.whiteToMove = board.whiteToMove;
+    }
+
+    static int findMove(Board board, String s) {
+        int[] buf = new int[MoveGenerator.MAX_MOVES];
+        int n = MoveGenerator.generateLegal(board, buf, 0);
+        for (int i = 0; i < n; i++) {
+            if (Search.moveToString(buf[i]).equals(s)) return buf[i];
+        }
+        return Move.NONE;
+    }
+
+    private void go(String[] t) {
+        int depth = 0;
+        long nodes = 0, moveTime = 0;
+        long wtime = 0, btime = 0, winc = 0, binc = 0;
+        int movesToGo = 0;
+        boolean infinite = false, ponder = false;
+        try {
+            for (int i = 1; i < t.length; i++) {
+                switch (t[i]) {
+                    case "depth": depth = Integer.parseInt(t[++i]); break;
+                    case "nodes": nodes = Long.parseLong(t[++i]); break;
+                    case "movetime": moveTime = Long.parseLong(t[++i]); break;
+                    case "wtime": wtime = Long.parseLong(t[++i]); break;
+                    case "btime": btime = Long.parseLong(t[++i]); break;
+                    case "winc": winc = Long.parseLong(t[++i]); break;
+                    case "binc": binc = Long.parseLong(t[++i]); break;
+                    case "movestogo": movesToGo = Integer.parseInt(t[++i]); break;
+                    case "infinite": infinite = true; break;
+                    case "ponder": ponder = true; break;
+                    default: break;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            send("info string bad go command");
+            return;
+        }
+
+        // book moves are answered at once, a ponder or infinite search still runs
+        if (!infinite && !ponder) {
+            int bm = engine.bookMove();
+            if (bm != Move.NONE) {
+                send("bestmove " + Search.moveToString(bm));
+                return;
+            }
+        }
+
+        boolean white = engine.board.whiteToMove;
+        long timeMs = moveTime > 0 ? moveTime
+                : allocate(white ? wtime : btime, white ? winc : binc, movesToGo);
+        synchronized (hold) {
+            holdBestMove = infinite || ponder;
+        }
+        // pondering searches without a clock until ponderhit starts it
+        ponderTimeMs = ponder ? timeMs : 0;
+        long limit = infinite || ponder ? 0 : timeMs;
+
+        Board root = new Board(engine.board);
+        LazySmp smp = new LazySmp(engine, engine.threads);
+        smp.onIteration = this::info;
+        current = smp;
+        final int maxDepth = depth;
+        final long maxNodes = nodes;
+        searchThread = new Thread(() -> {
+            Search.Result r = smp.search(root, maxDepth, maxNodes, limit);
+            synchronized (hold) {
+                while (holdBestMove) {
+                    try {
+                        hold.wait();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+            current = null;
+            if (r.bestMove == Move.NONE) {
+                send("bestmove 0000");
+            } else if (r.pv.length > 1) {
+                send("bestmove " + Search.moveToString(r.bestMove) + " ponder " + Search.moveToString(r.pv[1]));
+            } else {
+                send("bestmove " + Search.moveToString(r.bestMove));
+            }
+        }, "uci-search");
+        searchThread.start();
+    }
+
+    /** time for one move out of the remaining clock, 0 when there is no clock */
+    static long allocate(long timeLeft, long inc, int movesToGo) {
+        if (timeLeft <= 0) return 0;
+        long t = timeLeft / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO) + inc * 3 / 4;
+        return Math.max(1, Math.min(t, timeLeft - MOVE_OVERHEAD_MS));
+    }
+
+    private void stopSearch() {
+        synchronized (hold) {
+            holdBestMove = false;
+            hold.notifyAll();
+        }
+        LazySmp smp = current;
+        if (smp != null) smp.stop();
+    }
+
+    private void ponderHit() {
+        LazySmp smp = current;
+        if (smp != null) smp.setTimeLimit(ponderTimeMs);
+        synchronized (hold) {
+            holdBestMove = false;
+            hold.notifyAll();
+        }
+    }
+
+    // commands that change the board or the engine wait for the running search; an
+    // infinite or ponder search only ends on stop/ponderhit, so without one it is stopped
+    // here, or the reader would block in join for good
+    private void waitForSearch() {
+        Thread t = searchThread;
+        if (t == null) return;
+        boolean held;
+        synchronized (hold) {
+            held = holdBestMove;
+        }
+        if (held) stopSearch();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
+
+    private void info(Search.Result r) {
+        StringBuilder sb = new StringBuilder("info depth ").append(r.depth).append(" score ");
+        if (r.score >= Search.MATE_BOUND) sb.append("mate ").append((Search.MATE - r.score + 1) / 2);
+        else if (r.score <= -Search.MATE_BOUND) sb.append("mate ").append(-(Search.MATE + r.score) / 2);
+        else sb.append("cp ").append(r.score);
+        sb.append(" nodes ").append(r.nodes).append(" nps ").append(r.nps())
+          .append(" time ").append(r.elapsedMs).append(" hashfull ").append(engine.tt.hashfull())
+          .append(" pv");
+        for (int m : r.pv) sb.append(' ').append(Search.moveToString(m));
+        send(sb.toString());
+    }
+
+    private synchronized void send(String s) {
+        out.println(s);
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        new Uci(new Engine(), System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+}
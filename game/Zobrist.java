@@ -0,0 +1,49 @@
+package game;
+
+import java.util.Random;
+
+
+// Random keys for position hashing. Board keeps its key up to date
+// incrementally; compute() builds it from scratch (setup and debug checks).
+public final class Zobrist {
+
+    // [piece ordinal][square], index 0 (EMPTY) stays zero
+    public static final long[][] PIECE = new long[13][64];
+    public static final long SIDE;               // xor-ed in when black is to move
+    public static final long[] CASTLING = new long[16];
+    public static final long[] EN_PASSANT = new long[8]; // by file
+
+    private Zobrist() {}
+
+    static {
+        // fixed seed so keys are stable between runs
+        Random rnd = new Random(0x2F1E2D3C4B5A6978L);
+        for (int p = 1; p < 13; p++) {
+            for (int sq = 0; sq < 64; sq++) PIECE[p][sq] = rnd.nextLong();
+        }
+        SIDE = rnd.nextLong();
+        for (int i = 0; i < 16; i++) CASTLING[i] = rnd.nextLong();
+        for (int f = 0; f < 8; f++) EN_PASSANT[f] = rnd.nextLong();
+    }
+
+    public static long compute(Board board) {
+        long key = 0L;
+        for (int sq = 0; sq < 64; sq++) key ^= PIECE[board.squares[sq]][sq];
+        if (!board.whiteToMove) key ^= SIDE;
+        key ^= CASTLING[board.castlingRight];
+        if (board.enPassantSquare != -1) key ^= EN_PASSANT[board.enPassantSquare % 8];
+        return key;
+    }
+
+    /** the pawns' share of compute(), kept apart as Board.pawnKey */
+    public static long computePawnKey(Board board) {
+        long key = 0L;
+        for (long bb = board.pieceBB[Piece.WP.ordinal()]; bb != 0; bb &= bb - 1) {
+            key ^= PIECE[Piece.WP.ordinal()][Long.numberOfTrailingZeros(bb)];
+        }
+        for (long bb = board.pieceBB[Piece.BP.ordinal()]; bb != 0; bb &= bb - 1) {
+            key ^= PIECE[Piece.BP.ordinal()][Long.numberOfTrailingZeros(bb)];
+        }
+        return key;
+    }
+}
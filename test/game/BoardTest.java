@@ -0,0 +1,101 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+
+class BoardTest {
+
+    // FENs of perft.epd in the repository root; tests run from engine/
+    private static List<String> perftFens() throws IOException {
+        Path file = Path.of("perft.epd");
+        if (!Files.exists(file)) file = Path.of("..", "perft.epd");
+        return Files.readAllLines(file).stream()
+                .map(String::trim)
+                .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                .map(l -> l.split(";")[0].trim())
+                .collect(Collectors.toList());
+    }
+
+    private static void assertRoundTrip(Board board) {
+        ByteBuffer buf = ByteBuffer.allocate(Board.PACKED_BYTES);
+        board.encode(buf);
+        assertEquals(Board.PACKED_BYTES, buf.position());
+        buf.flip();
+        Board back = Board.decode(buf);
+        assertEquals(board.toFen(), back.toFen());
+        assertEquals(board.key, back.key, board.toFen());
+        assertEquals(board.pawnKey, back.pawnKey, board.toFen());
+    }
+
+    @Test
+    void fenRoundTripsOverThePerftSuite() throws IOException {
+        List<String> fens = perftFens();
+        assertFalse(fens.isEmpty());
+        for (String fen : fens) assertEquals(fen, Board.fromFen(fen).toFen());
+    }
+
+    @Test
+    void packedRoundTripsOverThePerftSuite() throws IOException {
+        // every position two plies deep as well, which brings in en-passant squares,
+        // lost castling rights, promotions and black to move
+        int[] first = new int[MoveGenerator.MAX_MOVES], second = new int[MoveGenerator.MAX_MOVES];
+        for (String fen : perftFens()) {
+            Board board = Board.fromFen(fen);
+            assertRoundTrip(board);
+            int n = MoveGenerator.generateLegal(board, first, 0);
+            for (int i = 0; i < n; i++) {
+                board.makeMove(first[i]);
+                assertRoundTrip(board);
+                int k = MoveGenerator.generateLegal(board, second, 0);
+                for (int j = 0; j < k; j++) {
+                    board.makeMove(second[j]);
+                    assertRoundTrip(board);
+                    board.undoMove();
+                }
+                board.undoMove();
+            }
+        }
+    }
+
+    @Test
+    void readsAnEnPassantSquare() {
+        Board b = Board.fromFen("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3");
+        assertEquals(b.squareFromString("d6"), b.enPassantSquare);
+        assertEquals("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3", b.toFen());
+    }
+
+    @Test
+    void rejectsABadEnPassantSquare() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Board.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e9 0 1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Board.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq x 0 1"));
+        // a real square, but not one a pawn can have skipped with white to move
+        assertThrows(IllegalArgumentException.class,
+                () -> Board.fromFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e3 0 1"));
+    }
+
+    @Test
+    void rejectsRanksThatAreNotEightSquares() {
+        // the first rank has nine squares and the second seven: the total is still 64
+        assertThrows(IllegalArgumentException.class,
+                () -> Board.fromFen("rnbqkbnrp/ppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Board.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Board.fromFen("rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Board.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNX w KQkq - 0 1"));
+    }
+}
@@ -0,0 +1,65 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+class PolyglotBookTest {
+
+    private static long key(String... moves) throws IOException {
+        Board board = new Board();
+        for (String m : moves) board.makeMove(Uci.findMove(board, m));
+        return PolyglotBook.key(board, PolyglotBook.defaultRandom64());
+    }
+
+    @Test
+    void startKey() throws IOException {
+        assertEquals(PolyglotBook.START_KEY, key());
+    }
+
+    // the example keys of the format specification
+    @Test
+    void publishedKeys() throws IOException {
+        assertEquals(0x823C9B50FD114196L, key("e2e4"));
+        assertEquals(0x0756B94461C50FB0L, key("e2e4", "d7d5"));
+        assertEquals(0x662FAFB965DB29D4L, key("e2e4", "d7d5", "e4e5"));
+        // en passant possible: the file counts
+        assertEquals(0x22A48B5A8E47FF78L, key("e2e4", "d7d5", "e4e5", "f7f5"));
+        assertEquals(0x652A607CA3F242C1L, key("e2e4", "d7d5", "e4e5", "f7f5", "e1e2"));
+        assertEquals(0x00FDD303C946BDD9L, key("e2e4", "d7d5", "e4e5", "f7f5", "e1e2", "e8f7"));
+        assertEquals(0x3C8123EA7B067637L, key("a2a4", "b7b5", "h2h4", "b5b4", "c2c4"));
+        assertEquals(0x5C3F9B829B279560L, key("a2a4", "b7b5", "h2h4", "b5b4", "c2c4", "b4c3", "a1a3"));
+    }
+
+    @Test
+    void rejectsAnotherTable() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < PolyglotBook.RANDOM_COUNT; i++) sb.append(Long.toHexString(i + 1)).append('\n');
+        assertThrows(IOException.class, () -> PolyglotBook.loadRandom64(sb.toString()));
+    }
+
+    @Test
+    void probesABook(@TempDir Path dir) throws IOException {
+        // one entry, 1. e4 from the start position
+        Path file = dir.resolve("book.bin");
+        ByteBuffer b = ByteBuffer.allocate(16);
+        int e2e4 = (1 << 9) | (4 << 6) | (3 << 3) | 4;
+        b.putLong(PolyglotBook.START_KEY).putShort((short) e2e4).putShort((short) 1).putInt(0);
+        Files.write(file, b.array());
+        try (PolyglotBook book = new PolyglotBook(file)) {
+            assertEquals(1, book.size());
+            assertEquals("e2e4", Search.moveToString(book.probe(new Board(), new Random(1))));
+            Board other = new Board();
+            other.makeMove(Uci.findMove(other, "d2d4"));
+            assertEquals(Move.NONE, book.probe(other, new Random(1)));
+        }
+    }
+}
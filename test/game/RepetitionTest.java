@@ -0,0 +1,71 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+class RepetitionTest {
+
+    private static void play(Board board, String... moves) {
+        for (String s : moves) {
+            int m = Uci.findMove(board, s);
+            assertNotEquals(Move.NONE, m, s + " is not legal");
+            board.makeMove(m);
+        }
+    }
+
+    // knights out and back: the start position again after four plies
+    private static final String[] SHUFFLE = {"g1f3", "g8f6", "f3g1", "f6g8"};
+
+    @Test
+    void threefoldInTheGame() {
+        Board game = new Board();
+        play(game, SHUFFLE);
+        assertTrue(game.isRepetition(1));
+        assertFalse(game.isRepetition(2));
+        play(game, SHUFFLE);
+        assertTrue(game.isRepetition(2));
+    }
+
+    @Test
+    void aCaptureOrPawnMoveEndsTheHistory() {
+        Board game = new Board();
+        play(game, SHUFFLE);
+        play(game, "e2e3", "e7e6");
+        play(game, SHUFFLE);
+        // the shuffles before the pawn moves do not count, the position after 1.e3 e6 is seen once
+        assertTrue(game.isRepetition(1));
+        assertFalse(game.isRepetition(2));
+    }
+
+    @Test
+    void aPositionFromBeforeTheRootNeedsTwoMatches() {
+        Board game = new Board();
+        play(game, SHUFFLE);
+        // the search copy inherits the game: the start position has been seen twice
+        Board search = new Board(game);
+        play(search, "g1f3");
+        // seen once in the game, before the root: not a draw yet
+        assertFalse(search.isSearchRepetition(1));
+        play(search, "g8f6", "f3g1", "f6g8");
+        // the root for the third time
+        assertTrue(search.isSearchRepetition(4));
+    }
+
+    @Test
+    void theRootRepeatedOnceIsNotADraw() {
+        Board search = new Board(new Board());
+        play(search, "b1c3", "g8f6", "c3b1", "f6g8");
+        assertFalse(search.isSearchRepetition(4));
+    }
+
+    @Test
+    void aPositionFromAfterTheRootIsADrawAtOnce() {
+        Board search = new Board(new Board());
+        play(search, "b1c3", "g8f6", "c3b1", "f6g8", "b1c3");
+        assertTrue(search.isSearchRepetition(5));
+    }
+}
@@ -0,0 +1,93 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+
+class SanTest {
+
+    private static void assertSan(String fen, String san, String uci) {
+        Board board = Board.fromFen(fen);
+        int m = Uci.findMove(board, uci);
+        assertNotEquals(Move.NONE, m, uci + " is not legal");
+        assertEquals(Search.moveToString(m), Search.moveToString(San.parse(board, san)), san);
+    }
+
+    private static void assertRejected(String fen, String san) {
+        assertEquals(Move.NONE, San.parse(Board.fromFen(fen), san), san);
+    }
+
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Test
+    void plainMoves() {
+        assertSan(START, "e4", "e2e4");
+        assertSan(START, "Nf3", "g1f3");
+        // check and annotation marks are ignored
+        assertSan(START, "Nc3+", "b1c3");
+        assertSan(START, "d4!?", "d2d4");
+    }
+
+    @Test
+    void disambiguatesByFile() {
+        String fen = "4k3/8/8/8/8/8/8/1N2KN2 w - - 0 1";
+        assertSan(fen, "Nbd2", "b1d2");
+        assertSan(fen, "Nfd2", "f1d2");
+        assertRejected(fen, "Nd2");
+    }
+
+    @Test
+    void disambiguatesByRank() {
+        String fen = "4k3/8/8/R7/8/8/8/R3K3 w - - 0 1";
+        assertSan(fen, "R1a3", "a1a3");
+        assertSan(fen, "R5a3", "a5a3");
+        assertRejected(fen, "Ra3");
+    }
+
+    @Test
+    void disambiguatesByFileAndRank() {
+        // queens on a1, c1 and a3 all reach b2: only a1 needs both
+        String fen = "4k3/8/8/8/8/Q7/8/Q1Q1K3 w - - 0 1";
+        assertSan(fen, "Qa1b2", "a1b2");
+        assertSan(fen, "Qcb2", "c1b2");
+        assertSan(fen, "Q3b2", "a3b2");
+        assertRejected(fen, "Qab2");
+        assertRejected(fen, "Q1b2");
+        assertRejected(fen, "Qb2");
+    }
+
+    @Test
+    void promotions() {
+        String fen = "3r4/4P3/8/8/8/8/k7/4K3 w - - 0 1";
+        assertSan(fen, "e8=Q", "e7e8q");
+        assertSan(fen, "e8Q", "e7e8q");
+        assertSan(fen, "e8=N", "e7e8n");
+        assertSan(fen, "exd8=R+", "e7d8r");
+        // a pawn reaching the last rank must say what it becomes
+        assertRejected(fen, "e8");
+        assertSan("4k3/8/8/8/8/8/p7/4K3 b - - 0 1", "a1=Q+", "a2a1q");
+    }
+
+    @Test
+    void castling() {
+        String fen = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+        assertSan(fen, "O-O", "e1g1");
+        assertSan(fen, "O-O-O", "e1c1");
+        assertSan(fen, "0-0", "e1g1");
+        assertSan(fen, "0-0-0", "e1c1");
+        assertSan("r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1", "O-O-O", "e8c8");
+        assertRejected(fen, "O-0");
+        assertRejected("r3k2r/8/8/8/8/8/8/R3K2R w kq - 0 1", "O-O");
+    }
+
+    @Test
+    void rejectsIllegalMoves() {
+        assertRejected(START, "e5");
+        assertRejected(START, "Ke2");
+        assertRejected(START, "Nd2");
+        assertRejected(START, "Zf3");
+        assertRejected(START, "");
+    }
+}
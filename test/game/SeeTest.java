@@ -0,0 +1,56 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+
+class SeeTest {
+
+    private static int see(String fen, String move) {
+        Board board = Board.fromFen(fen);
+        int m = Uci.findMove(board, move);
+        assertNotEquals(Move.NONE, m, move + " is not legal");
+        return See.see(board, m);
+    }
+
+    @Test
+    void undefendedCaptureWinsThePiece() {
+        assertEquals(100, see("1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1", "e1e5"));
+    }
+
+    @Test
+    void pawnTakesQueenDefendedByPawn() {
+        // the recapture costs the pawn: 900 - 100
+        assertEquals(800, see("4k3/8/2p5/3q4/4P3/8/8/4K3 w - - 0 1", "e4d5"));
+    }
+
+    @Test
+    void queenTakesPawnDefendedByPawn() {
+        assertEquals(-800, see("4k3/8/2p5/3p4/8/8/8/3QK3 w - - 0 1", "d1d5"));
+    }
+
+    @Test
+    void knightTakesDefendedPawn() {
+        // NxP, NxN, RxN, BxR, QxB... black stops as soon as it is ahead
+        assertEquals(100 - 320, see("1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1", "d3e5"));
+    }
+
+    @Test
+    void equalTrade() {
+        assertEquals(0, see("4k3/8/2p5/3n4/8/4N3/8/4K3 w - - 0 1", "e3d5"));
+    }
+
+    @Test
+    void xrayRookBehindRook() {
+        // RxP, RxR, RxR: the rook on e1 joins once the one on e2 has gone
+        assertEquals(100, see("4r1k1/8/8/4p3/8/8/4R3/4R1K1 w - - 0 1", "e2e5"));
+    }
+
+    @Test
+    void kingRecapturesOnlyWhenNothingTakesBack() {
+        assertEquals(0, see("8/8/8/3k4/4p3/5P2/8/5K2 w - - 0 1", "f3e4"));
+        assertEquals(100, see("8/8/8/3k4/4p3/5P2/8/4RK2 w - - 0 1", "f3e4"));
+    }
+}